@@ -0,0 +1,90 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of many short messages, each with its own rotor settings,
+ *  converted by a BatchMachine and one at a time by a Machine.
+ *  @author Katrina Sharonin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBench {
+
+    /** Number of letters in the alphabet. */
+    @Param({ "26", "64" })
+    public int alphabetSize;
+
+    /** Number of messages. */
+    @Param({ "64", "4096" })
+    public int messages;
+
+    /** Number of letters in each message. */
+    @Param({ "16", "256" })
+    public int messageLength;
+
+    /** Machine whose settings the messages use. */
+    private Machine _machine;
+
+    /** Batch converter for _machine. */
+    private BatchMachine _batch;
+
+    /** Settings of each message. */
+    private CompiledSettings[] _settings;
+
+    /** The messages. */
+    private String[] _messages;
+
+    /** Build the machine, settings and messages. */
+    @Setup
+    public void setUp() {
+        _machine = BenchSetup.machine(alphabetSize, 5, 3, 10);
+        _machine.setCacheCapacity(0);
+        _batch = new BatchMachine(_machine);
+        Random random = new Random(BenchSetup.SEED);
+        String text = BenchSetup.message(alphabetSize,
+                                         messages * messageLength, 0);
+        _settings = new CompiledSettings[messages];
+        _messages = new String[messages];
+        for (int m = 0; m < messages; m += 1) {
+            _machine.jump(random.nextInt(1 << 20));
+            _settings[m] = _machine.compile();
+            _messages[m] = text.substring(m * messageLength,
+                                          (m + 1) * messageLength);
+        }
+    }
+
+    /** Convert all the messages in one batch. */
+    @Benchmark
+    public String[] batch() {
+        return _batch.convert(_settings, _messages);
+    }
+
+    /** Convert the messages one at a time. */
+    @Benchmark
+    public String[] oneByOne() {
+        String[] result = new String[messages];
+        for (int m = 0; m < messages; m += 1) {
+            _machine.apply(_settings[m]);
+            result[m] = _machine.convert(_messages[m]);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,176 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/** Synthetic alphabets, rotors, machines and messages of any size for the
+ *  benchmarks.  Everything is generated from a fixed seed, so that runs
+ *  are comparable.
+ *  @author Katrina Sharonin
+ */
+class BenchSetup {
+
+    /** Seed for all generated data. */
+    static final long SEED = 61;
+
+    /** Letters used first in generated alphabets; larger alphabets
+     *  continue from LATIN_EXTENDED. */
+    private static final String BASE =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+    /** First letter used after BASE is exhausted. */
+    private static final char LATIN_EXTENDED = '\u0100';
+
+    /** Return the characters of an alphabet of SIZE letters. */
+    static String alphabetChars(int size) {
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < size; i += 1) {
+            chars.append(i < BASE.length() ? BASE.charAt(i)
+                         : (char) (LATIN_EXTENDED + i - BASE.length()));
+        }
+        return chars.toString();
+    }
+
+    /** Return a random permutation of the letters of CHARS in cycle
+     *  notation, using RANDOM. */
+    static String randomCycles(String chars, Random random) {
+        List<Character> order = shuffled(chars, random);
+        StringBuilder cycles = new StringBuilder();
+        int i = 0;
+        while (i < order.size()) {
+            int len = 1 + random.nextInt(Math.min(order.size() - i, 12));
+            cycles.append('(');
+            for (int k = 0; k < len; k += 1) {
+                cycles.append(order.get(i + k));
+            }
+            cycles.append(") ");
+            i += len;
+        }
+        return cycles.toString();
+    }
+
+    /** Return PAIRS random disjoint swaps of letters of CHARS in cycle
+     *  notation, using RANDOM.  With PAIRS equal to half the length of
+     *  CHARS, this is a reflector. */
+    static String randomPairs(String chars, int pairs, Random random) {
+        List<Character> order = shuffled(chars, random);
+        StringBuilder cycles = new StringBuilder();
+        for (int i = 0; i < pairs; i += 1) {
+            cycles.append('(').append(order.get(2 * i))
+                .append(order.get(2 * i + 1)).append(") ");
+        }
+        return cycles.toString();
+    }
+
+    /** Return the text of a configuration file for an alphabet of
+     *  ALPHASIZE letters, ROTORS slots and PAWLS pawls, with just enough
+     *  rotors to fill the slots, named R (the reflector), F1, F2, ...
+     *  (fixed) and M1, M2, ... (moving). */
+    static String configText(int alphaSize, int rotors, int pawls) {
+        Random random = new Random(SEED);
+        String chars = alphabetChars(alphaSize);
+        StringBuilder config = new StringBuilder();
+        config.append(chars).append('\n');
+        config.append(rotors).append(' ').append(pawls).append('\n');
+        config.append("R R ")
+            .append(randomPairs(chars, alphaSize / 2, random)).append('\n');
+        for (int i = 1; i < rotors - pawls; i += 1) {
+            config.append('F').append(i).append(" N ")
+                .append(randomCycles(chars, random)).append('\n');
+        }
+        for (int i = 1; i <= pawls; i += 1) {
+            config.append('M').append(i).append(" M")
+                .append(chars.charAt(random.nextInt(alphaSize)))
+                .append(' ').append(randomCycles(chars, random))
+                .append('\n');
+        }
+        return config.toString();
+    }
+
+    /** Return the names of the rotors of configText(ALPHASIZE, ROTORS,
+     *  PAWLS), in slot order. */
+    static String[] rotorNames(int rotors, int pawls) {
+        String[] names = new String[rotors];
+        names[0] = "R";
+        for (int i = 1; i < rotors - pawls; i += 1) {
+            names[i] = "F" + i;
+        }
+        for (int i = 1; i <= pawls; i += 1) {
+            names[rotors - pawls - 1 + i] = "M" + i;
+        }
+        return names;
+    }
+
+    /** Return a settings line for configText(ALPHASIZE, ROTORS, PAWLS) with
+     *  PLUGPAIRS plugboard pairs. */
+    static String settingsLine(int alphaSize, int rotors, int pawls,
+                               int plugPairs) {
+        Random random = new Random(SEED + 1);
+        String chars = alphabetChars(alphaSize);
+        StringBuilder line = new StringBuilder("*");
+        for (String name : rotorNames(rotors, pawls)) {
+            line.append(' ').append(name);
+        }
+        line.append(' ');
+        for (int i = 1; i < rotors; i += 1) {
+            line.append(chars.charAt(random.nextInt(alphaSize)));
+        }
+        line.append(' ').append(randomPairs(chars, plugPairs, random));
+        return line.toString();
+    }
+
+    /** Return a machine set up by configText and settingsLine with the
+     *  given ALPHASIZE, ROTORS, PAWLS and PLUGPAIRS. */
+    static Machine machine(int alphaSize, int rotors, int pawls,
+                           int plugPairs) {
+        Random random = new Random(SEED);
+        Alphabet alphabet = new Alphabet(alphabetChars(alphaSize));
+        String chars = alphabetChars(alphaSize);
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("R", new Permutation(
+            randomPairs(chars, alphaSize / 2, random), alphabet)));
+        for (int i = 1; i < rotors - pawls; i += 1) {
+            all.add(new FixedRotor("F" + i, new Permutation(
+                randomCycles(chars, random), alphabet)));
+        }
+        for (int i = 1; i <= pawls; i += 1) {
+            String notch = String.valueOf(chars.charAt(
+                random.nextInt(alphaSize)));
+            all.add(new MovingRotor("M" + i, new Permutation(
+                randomCycles(chars, random), alphabet), notch));
+        }
+        Machine machine = new Machine(alphabet, rotors, pawls, all);
+        Main.setUp(machine, settingsLine(alphaSize, rotors, pawls,
+                                         plugPairs));
+        return machine;
+    }
+
+    /** Return a message of LENGTH random letters of an alphabet of
+     *  ALPHASIZE letters, with a space after every GAP letters (none if
+     *  GAP is 0). */
+    static String message(int alphaSize, int length, int gap) {
+        Random random = new Random(SEED + 2);
+        String chars = alphabetChars(alphaSize);
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            if (gap > 0 && i > 0 && i % gap == 0) {
+                msg.append(' ');
+            }
+            msg.append(chars.charAt(random.nextInt(alphaSize)));
+        }
+        return msg.toString();
+    }
+
+    /** Return the letters of CHARS in random order, using RANDOM. */
+    private static List<Character> shuffled(String chars, Random random) {
+        List<Character> order = new ArrayList<>();
+        for (int i = 0; i < chars.length(); i += 1) {
+            order.add(chars.charAt(i));
+        }
+        Collections.shuffle(order, random);
+        return order;
+    }
+
+}
@@ -0,0 +1,91 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of a whole Machine: single-letter conversion (which
+ *  includes advanceRotors) and conversion of whole messages.
+ *  @author Katrina Sharonin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineBench {
+
+    /** Number of letters in the alphabet. */
+    @Param({ "26", "64", "200" })
+    public int alphabetSize;
+
+    /** Number of rotor slots, including the reflector. */
+    @Param({ "5", "8" })
+    public int rotors;
+
+    /** Number of pawls (moving rotors). */
+    @Param({ "1", "3" })
+    public int pawls;
+
+    /** Number of plugboard pairs. */
+    @Param({ "0", "10" })
+    public int plugPairs;
+
+    /** Number of letters in the converted message. */
+    @Param({ "64", "65536" })
+    public int messageLength;
+
+    /** Capacity of the composed-permutation cache; 0 disables it. */
+    @Param({ "0", "32768" })
+    public int cacheCapacity;
+
+    /** Machine under test. */
+    private Machine _machine;
+
+    /** Message to convert, with a space every five letters. */
+    private String _message;
+
+    /** Message to convert, as indices. */
+    private int[] _indices;
+
+    /** Build the machine and message. */
+    @Setup
+    public void setUp() {
+        _machine = BenchSetup.machine(alphabetSize, rotors, pawls, plugPairs);
+        _machine.setCacheCapacity(cacheCapacity);
+        _message = BenchSetup.message(alphabetSize, messageLength, 5);
+        _indices = new int[messageLength];
+        String letters = BenchSetup.message(alphabetSize, messageLength, 0);
+        for (int i = 0; i < messageLength; i += 1) {
+            _indices[i] = _machine.alphabet().toInt(letters.charAt(i));
+        }
+    }
+
+    /** Advance and convert each letter of the message by index. */
+    @Benchmark
+    public int convertIndex() {
+        int sum = 0;
+        for (int c : _indices) {
+            sum += _machine.convert(c);
+        }
+        return sum;
+    }
+
+    /** Convert the message as a String. */
+    @Benchmark
+    public String convertString() {
+        return _machine.convert(_message);
+    }
+
+}
@@ -0,0 +1,121 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** End-to-end benchmark of Main: reading the configuration, then
+ *  converting an input file of SECTIONS settings lines, each followed by
+ *  message lines, into an output file.
+ *  @author Katrina Sharonin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MainBench {
+
+    /** Number of settings lines in the input. */
+    static final int SECTIONS = 100;
+
+    /** Letters in each message line. */
+    static final int LINE_LENGTH = 80;
+
+    /** Number of letters in the alphabet.  Kept to ASCII letters and
+     *  digits, which every platform charset can encode. */
+    @Param({ "26", "62" })
+    public int alphabetSize;
+
+    /** Number of rotor slots, including the reflector. */
+    @Param({ "5" })
+    public int rotors;
+
+    /** Number of pawls (moving rotors). */
+    @Param({ "3" })
+    public int pawls;
+
+    /** Number of plugboard pairs. */
+    @Param({ "0", "10" })
+    public int plugPairs;
+
+    /** Number of letters after each settings line. */
+    @Param({ "800", "80000" })
+    public int messageLength;
+
+    /** Processing mode option for Main, or "" for the default. */
+    @Param({ "", "--stream", "--parallel" })
+    public String mode;
+
+    /** Scratch directory holding the files. */
+    private Path _dir;
+
+    /** Arguments for Main. */
+    private String[] _args;
+
+    /** Write the configuration and input files. */
+    @Setup
+    public void setUp() throws IOException {
+        _dir = Files.createTempDirectory("enigma-bench");
+        Path config = _dir.resolve("bench.conf");
+        Path input = _dir.resolve("bench.in");
+        Files.write(config, BenchSetup.configText(alphabetSize, rotors, pawls)
+                    .getBytes(Charset.defaultCharset()));
+        String settings = BenchSetup.settingsLine(alphabetSize, rotors,
+                                                  pawls, plugPairs);
+        String message = BenchSetup.message(alphabetSize, messageLength, 5);
+        StringBuilder text = new StringBuilder();
+        for (int s = 0; s < SECTIONS; s += 1) {
+            text.append(settings).append('\n');
+            for (int i = 0; i < message.length(); i += LINE_LENGTH) {
+                text.append(message, i,
+                            Math.min(message.length(), i + LINE_LENGTH))
+                    .append('\n');
+            }
+        }
+        Files.write(input, text.toString().getBytes(Charset.defaultCharset()));
+        List<String> args = new ArrayList<>();
+        if (!mode.isEmpty()) {
+            args.add(mode);
+        }
+        args.add(config.toString());
+        args.add(input.toString());
+        args.add(_dir.resolve("bench.out").toString());
+        _args = args.toArray(new String[0]);
+    }
+
+    /** Remove the scratch files. */
+    @TearDown
+    public void tearDown() throws IOException {
+        for (String name : new String[] { "bench.conf", "bench.in",
+                                          "bench.out" }) {
+            Files.deleteIfExists(_dir.resolve(name));
+        }
+        Files.deleteIfExists(_dir);
+    }
+
+    /** Run Main over the input. */
+    @Benchmark
+    public void process() {
+        Main.main(_args);
+    }
+
+}
@@ -0,0 +1,61 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of Permutation.permute and Permutation.invert over every
+ *  index of the alphabet.
+ *  @author Katrina Sharonin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermutationBench {
+
+    /** Number of letters in the alphabet. */
+    @Param({ "26", "64", "200" })
+    public int alphabetSize;
+
+    /** Permutation under test. */
+    private Permutation _perm;
+
+    /** Build the permutation. */
+    @Setup
+    public void setUp() {
+        String chars = BenchSetup.alphabetChars(alphabetSize);
+        _perm = new Permutation(BenchSetup.randomCycles(chars,
+                new java.util.Random(BenchSetup.SEED)), new Alphabet(chars));
+    }
+
+    /** Permute every index. */
+    @Benchmark
+    public void permute(Blackhole sink) {
+        for (int i = 0; i < alphabetSize; i += 1) {
+            sink.consume(_perm.permute(i));
+        }
+    }
+
+    /** Invert every index. */
+    @Benchmark
+    public void invert(Blackhole sink) {
+        for (int i = 0; i < alphabetSize; i += 1) {
+            sink.consume(_perm.invert(i));
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of Rotor.convertForward and Rotor.convertBackward over
+ *  every index of the alphabet, at a fixed setting.
+ *  @author Katrina Sharonin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotorBench {
+
+    /** Number of letters in the alphabet. */
+    @Param({ "26", "64", "200" })
+    public int alphabetSize;
+
+    /** Whether the rotor uses its precomputed tables, where its alphabet
+     *  is small enough for them. */
+    @Param({ "true", "false" })
+    public boolean precomputed;
+
+    /** Rotor under test. */
+    private Rotor _rotor;
+
+    /** Setting at which _rotor is used. */
+    private int _setting;
+
+    /** Build the rotor. */
+    @Setup
+    public void setUp() {
+        String chars = BenchSetup.alphabetChars(alphabetSize);
+        Random random = new Random(BenchSetup.SEED);
+        _rotor = new Rotor("M", new Permutation(
+            BenchSetup.randomCycles(chars, random), new Alphabet(chars)),
+            precomputed && alphabetSize <= Rotor.PRECOMPUTE_LIMIT);
+        _setting = random.nextInt(alphabetSize);
+    }
+
+    /** Convert every index forward. */
+    @Benchmark
+    public void convertForward(Blackhole sink) {
+        for (int i = 0; i < alphabetSize; i += 1) {
+            sink.consume(_rotor.convertForward(i, _setting));
+        }
+    }
+
+    /** Convert every index backward. */
+    @Benchmark
+    public void convertBackward(Blackhole sink) {
+        for (int i = 0; i < alphabetSize; i += 1) {
+            sink.consume(_rotor.convertBackward(i, _setting));
+        }
+    }
+
+}
@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *  @author Katrina Sharonin
@@ -10,6 +12,7 @@ class Alphabet {
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
         _charas = chars;
+        buildIndex();
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -22,9 +25,15 @@ class Alphabet {
         return _charas.length();
     }
 
+    /** Returns the largest character in the alphabet, or 0 if it is
+     *  empty. */
+    char maxChar() {
+        return _high;
+    }
+
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        return _charas.indexOf(ch) != -1;
+        return toInt(ch) != NOT_FOUND;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -37,12 +46,102 @@ class Alphabet {
     }
 
     /** Returns the index of character CH which must be in
-     *  the alphabet. This is the inverse of toChar(). */
+     *  the alphabet. This is the inverse of toChar(). Returns
+     *  NOT_FOUND if CH is not in the alphabet. */
     int toInt(char ch) {
-        return _charas.indexOf(ch);
+        if (_dense != null) {
+            int k = ch - _low;
+            if (k < 0 || k >= _dense.length) {
+                return NOT_FOUND;
+            }
+            return _dense[k];
+        }
+        int mask = _hashKeys.length - 1;
+        for (int h = hash(ch) & mask; ; h = (h + 1) & mask) {
+            int v = _hashValues[h];
+            if (v == NOT_FOUND || _hashKeys[h] == ch) {
+                return v;
+            }
+        }
     }
 
+    /** Build the reverse index from characters to indices.  A flat table
+     *  covering the range of my characters is used when that range is
+     *  small; otherwise an open-addressing hash table. */
+    private void buildIndex() {
+        int size = _charas.length();
+        char low = Character.MAX_VALUE, high = Character.MIN_VALUE;
+        for (int i = 0; i < size; i += 1) {
+            low = (char) Math.min(low, _charas.charAt(i));
+            high = (char) Math.max(high, _charas.charAt(i));
+        }
+        _high = size == 0 ? 0 : high;
+        int span = size == 0 ? 0 : high - low + 1;
+        if (span <= DENSE_SPAN || span <= DENSE_FACTOR * size) {
+            _low = low;
+            _dense = new int[span];
+            Arrays.fill(_dense, NOT_FOUND);
+            for (int i = 0; i < size; i += 1) {
+                int k = _charas.charAt(i) - low;
+                if (_dense[k] != NOT_FOUND) {
+                    throw new EnigmaException("Alphabet: duplicate char");
+                }
+                _dense[k] = i;
+            }
+        } else {
+            int capacity = Integer.highestOneBit(size * 2 - 1) * 2;
+            _hashKeys = new char[capacity];
+            _hashValues = new int[capacity];
+            Arrays.fill(_hashValues, NOT_FOUND);
+            int mask = capacity - 1;
+            for (int i = 0; i < size; i += 1) {
+                char ch = _charas.charAt(i);
+                int h = hash(ch) & mask;
+                while (_hashValues[h] != NOT_FOUND) {
+                    if (_hashKeys[h] == ch) {
+                        throw new EnigmaException("Alphabet: duplicate char");
+                    }
+                    h = (h + 1) & mask;
+                }
+                _hashKeys[h] = ch;
+                _hashValues[h] = i;
+            }
+        }
+    }
+
+    /** Return a hash of CH that spreads nearby characters apart. */
+    private static int hash(char ch) {
+        int h = ch * 0x9E3779B1;
+        return h ^ (h >>> 16);
+    }
+
+    /** Index returned by toInt for characters not in the alphabet. */
+    static final int NOT_FOUND = -1;
+
+    /** Character ranges at most this wide always get a flat index. */
+    private static final int DENSE_SPAN = 1024;
+
+    /** Wider ranges get a flat index if no more than this many times
+     *  the size of the alphabet. */
+    private static final int DENSE_FACTOR = 4;
+
     /** Chars of alphabet. */
     private String _charas;
 
+    /** Highest character in the alphabet. */
+    private char _high;
+
+    /** Lowest character in the alphabet, when using a flat index. */
+    private char _low;
+
+    /** Flat index: _dense[C - _low] is the index of character C, or
+     *  NOT_FOUND.  Null when the hash index is in use. */
+    private int[] _dense;
+
+    /** Keys of the hash index for sparse alphabets. */
+    private char[] _hashKeys;
+
+    /** Values of the hash index; NOT_FOUND marks an empty slot. */
+    private int[] _hashValues;
+
 }
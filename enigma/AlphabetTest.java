@@ -36,4 +36,20 @@ public class AlphabetTest {
         }
         assertFalse(testcomply.contains('A'));
     }
+
+    @Test
+    public void testSparse() {
+        String sparse = "A\u4e2d\uffee~z\u0100";
+        Alphabet alpha = new Alphabet(sparse);
+        for (int i = 0; i < sparse.length(); i++) {
+            assertEquals(i, alpha.toInt(sparse.charAt(i)));
+        }
+        assertEquals(Alphabet.NOT_FOUND, alpha.toInt('B'));
+        assertFalse(alpha.contains('\u4e2e'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicate() {
+        new Alphabet("ABCA");
+    }
 }
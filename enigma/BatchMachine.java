@@ -0,0 +1,274 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Converts many independent messages, each with its own settings, one
+ *  letter position at a time across all of them.  The rotor settings of
+ *  the messages are kept in structure-of-arrays form (one array per
+ *  slot, indexed by message), and each rotor of a slot is applied to
+ *  every message in one loop of loads from tables shared by all the
+ *  messages, with no virtual calls.  The results are the same as
+ *  applying each message's settings to a Machine and converting it.
+ *
+ *  The shared tables hold, for each available rotor, its conversion of
+ *  each letter at each setting, so they have size() x size() entries per
+ *  rotor.  For alphabets larger than Rotor.PRECOMPUTE_LIMIT they are not
+ *  built, and each message is converted by a copy of the machine
+ *  instead.
+ *  @author Katrina Sharonin
+ */
+final class BatchMachine {
+
+    /** A batch converter for settings compiled by MACHINE or a copy of
+     *  it. */
+    BatchMachine(Machine machine) {
+        _machine = machine.copy();
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        List<Rotor> rotors = machine.availableRotors();
+        if (_size > Rotor.PRECOMPUTE_LIMIT) {
+            _forward = _backward = null;
+            _rotates = null;
+            _notch = null;
+            return;
+        }
+        int tableSize = _size * _size;
+        _forward = new int[rotors.size() * tableSize];
+        _backward = new int[rotors.size() * tableSize];
+        _rotates = new boolean[rotors.size()];
+        _notch = new boolean[rotors.size() * _size];
+        for (int r = 0; r < rotors.size(); r += 1) {
+            Rotor rotor = rotors.get(r);
+            _rotates[r] = rotor.rotates();
+            for (int p = 0; p < _size; p += 1) {
+                _notch[r * _size + p] = rotor.atNotch(p);
+                for (int c = 0; c < _size; c += 1) {
+                    int k = r * tableSize + p * _size + c;
+                    _forward[k] = rotor.convertForward(c, p);
+                    _backward[k] = rotor.convertBackward(c, p);
+                }
+            }
+        }
+    }
+
+    /** Return true iff I convert with shared tables, rather than with a
+     *  machine per message. */
+    boolean batched() {
+        return _forward != null;
+    }
+
+    /** Return the conversions of MSGS, less whitespace, where MSGS[K] is
+     *  converted starting from SETTINGS[K]. */
+    String[] convert(CompiledSettings[] settings, CharSequence[] msgs) {
+        if (settings.length != msgs.length) {
+            throw error("%d settings for %d messages", settings.length,
+                        msgs.length);
+        }
+        String[] result = new String[msgs.length];
+        if (!batched()) {
+            for (int m = 0; m < msgs.length; m += 1) {
+                _machine.apply(settings[m]);
+                result[m] = _machine.convert(msgs[m].toString());
+            }
+            return result;
+        }
+        int n = msgs.length;
+        if (n == 0) {
+            return result;
+        }
+        int[][] letters = new int[n][];
+        Integer[] order = new Integer[n];
+        for (int m = 0; m < n; m += 1) {
+            letters[m] = letters(msgs[m]);
+            order[m] = m;
+        }
+        Arrays.sort(order,
+                    (a, b) -> letters[b].length - letters[a].length);
+        int slots = settings[0].numRotors();
+        Lanes lanes = new Lanes(n, slots);
+        for (int lane = 0; lane < n; lane += 1) {
+            lanes.load(lane, settings[order[lane]]);
+        }
+
+        char[][] out = new char[n][];
+        for (int lane = 0; lane < n; lane += 1) {
+            out[lane] = new char[letters[order[lane]].length];
+        }
+        int active = n;
+        int[] c = new int[n];
+        long converted = 0;
+        for (int t = 0; active > 0; t += 1) {
+            while (active > 0 && letters[order[active - 1]].length <= t) {
+                active -= 1;
+            }
+            for (int lane = 0; lane < active; lane += 1) {
+                c[lane] = letters[order[lane]][t];
+            }
+            lanes.step(active);
+            lanes.convert(c, active);
+            for (int lane = 0; lane < active; lane += 1) {
+                out[lane][t] = _alphabet.toChar(c[lane]);
+            }
+            converted += active;
+        }
+        EnigmaMetrics.get().converted(converted, lanes._steps,
+                                      lanes._doubleSteps);
+        for (int lane = 0; lane < n; lane += 1) {
+            result[order[lane]] = new String(out[lane]);
+        }
+        return result;
+    }
+
+    /** Return the indices in my alphabet of the letters of MSG, skipping
+     *  whitespace. */
+    private int[] letters(CharSequence msg) {
+        int[] result = new int[msg.length()];
+        int k = 0;
+        for (int i = 0; i < msg.length(); i += 1) {
+            char ch = msg.charAt(i);
+            if (!Machine.isWhitespace(ch)) {
+                int index = _alphabet.toInt(ch);
+                if (index == Alphabet.NOT_FOUND) {
+                    throw error("character %c not in alphabet", ch);
+                }
+                result[k] = index;
+                k += 1;
+            }
+        }
+        return Arrays.copyOf(result, k);
+    }
+
+    /** The state of a batch of messages, by lane, as parallel arrays
+     *  indexed by slot * (number of lanes) + lane. */
+    private class Lanes {
+
+        /** Room for N lanes of machines with SLOTS rotor slots. */
+        Lanes(int n, int slots) {
+            _n = n;
+            _slots = slots;
+            _rotor = new int[slots * n];
+            _posn = new int[slots * n];
+            _canCarry = new boolean[slots * n];
+            _carry = new boolean[(slots + 1) * n];
+            _plugboard = new int[n * _size];
+        }
+
+        /** Set LANE to start from SETTINGS. */
+        void load(int lane, CompiledSettings settings) {
+            if (settings.numRotors() != _slots) {
+                throw error("settings for different numbers of rotors");
+            }
+            int[] posns = settings.settings();
+            for (int i = 0; i < _slots; i += 1) {
+                int r = settings.rotor(i);
+                _rotor[i * _n + lane] = r;
+                _posn[i * _n + lane] = posns[i];
+                _canCarry[i * _n + lane] =
+                    i > 0 && _rotates[settings.rotor(i - 1)];
+            }
+            Permutation plugboard = settings.plugboard();
+            for (int c = 0; c < _size; c += 1) {
+                _plugboard[lane * _size + c] =
+                    plugboard == null ? c : plugboard.permute(c);
+            }
+        }
+
+        /** Advance the rotors of lanes 0 .. ACTIVE-1 by one letter, as
+         *  Machine does. */
+        void step(int active) {
+            int fast = _slots - 1;
+            for (int i = 1; i <= fast; i += 1) {
+                int base = i * _n;
+                for (int lane = 0; lane < active; lane += 1) {
+                    _carry[base + lane] = _canCarry[base + lane]
+                        && _notch[_rotor[base + lane] * _size
+                                  + _posn[base + lane]];
+                }
+                if (i < fast) {
+                    for (int lane = 0; lane < active; lane += 1) {
+                        _doubleSteps += _carry[base + lane] ? 1 : 0;
+                    }
+                }
+            }
+            Arrays.fill(_carry, _slots * _n, _slots * _n + active, false);
+            for (int i = 1; i <= fast; i += 1) {
+                int base = i * _n;
+                for (int lane = 0; lane < active; lane += 1) {
+                    boolean advance = i == fast || _carry[base + lane]
+                        || _carry[base + _n + lane];
+                    if (advance) {
+                        if (_rotates[_rotor[base + lane]]) {
+                            int p = _posn[base + lane] + 1;
+                            _posn[base + lane] = p == _size ? 0 : p;
+                        }
+                        _steps += 1;
+                    }
+                }
+            }
+        }
+
+        /** Replace each of C[0 .. ACTIVE-1] by its conversion in its
+         *  lane. */
+        void convert(int[] c, int active) {
+            int tableSize = _size * _size;
+            for (int lane = 0; lane < active; lane += 1) {
+                c[lane] = _plugboard[lane * _size + c[lane]];
+            }
+            for (int i = _slots - 1; i >= 0; i -= 1) {
+                int base = i * _n;
+                for (int lane = 0; lane < active; lane += 1) {
+                    c[lane] = _forward[_rotor[base + lane] * tableSize
+                                       + _posn[base + lane] * _size
+                                       + c[lane]];
+                }
+            }
+            for (int i = 1; i < _slots; i += 1) {
+                int base = i * _n;
+                for (int lane = 0; lane < active; lane += 1) {
+                    c[lane] = _backward[_rotor[base + lane] * tableSize
+                                        + _posn[base + lane] * _size
+                                        + c[lane]];
+                }
+            }
+            for (int lane = 0; lane < active; lane += 1) {
+                c[lane] = _plugboard[lane * _size + c[lane]];
+            }
+        }
+
+        /** Number of lanes. */
+        private final int _n;
+        /** Number of rotor slots. */
+        private final int _slots;
+        /** Index among the available rotors of the rotor in each slot. */
+        private final int[] _rotor;
+        /** Setting of the rotor in each slot. */
+        private final int[] _posn;
+        /** Whether the rotor to the left of each slot rotates. */
+        private final boolean[] _canCarry;
+        /** Whether each slot carries on the current step, with an extra
+         *  slot of falses past the fast rotor. */
+        private final boolean[] _carry;
+        /** Plugboard of each lane, indexed by lane * size + letter. */
+        private final int[] _plugboard;
+        /** Rotor advances and double steps taken by all lanes. */
+        private long _steps, _doubleSteps;
+    }
+
+    /** Machine used for messages when there are no shared tables. */
+    private final Machine _machine;
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Conversions by each available rotor r, at setting p, of letter c,
+     *  indexed by (r * size + p) * size + c, or null if not batched. */
+    private final int[] _forward, _backward;
+    /** Whether each available rotor rotates. */
+    private final boolean[] _rotates;
+    /** Whether each available rotor r is at a notch at setting p,
+     *  indexed by r * size + p. */
+    private final boolean[] _notch;
+}
@@ -0,0 +1,113 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the BatchMachine class.
+ *  @author Katrina Sharonin
+ */
+public class BatchMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    private static final String[] MOVING = {
+        "I", "II", "III", "IV", "V", "VI", "VII", "VIII"
+    };
+
+    private static final String[] NOTCHES = {
+        "Q", "E", "V", "J", "Z", "ZM", "ZM", "ZM"
+    };
+
+    /** A machine with five slots and three pawls, and all the Naval
+     *  rotors. */
+    private Machine machine() {
+        HashMap<String, String> nav = TestUtils.NAVALA;
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : new String[] { "B", "C" }) {
+            rotors.add(new Reflector(name,
+                    new Permutation(nav.get(name), AZ)));
+        }
+        for (String name : new String[] { "Beta", "Gamma" }) {
+            rotors.add(new FixedRotor(name,
+                    new Permutation(nav.get(name), AZ)));
+        }
+        for (int i = 0; i < MOVING.length; i += 1) {
+            rotors.add(new MovingRotor(MOVING[i],
+                    new Permutation(nav.get(MOVING[i]), AZ), NOTCHES[i]));
+        }
+        return new Machine(AZ, 5, 3, rotors);
+    }
+
+    /** Return random settings for MACH, using RANDOM. */
+    private CompiledSettings randomSettings(Machine mach, Random random) {
+        ArrayList<String> moving = new ArrayList<>();
+        while (moving.size() < 3) {
+            String name = MOVING[random.nextInt(MOVING.length)];
+            if (!moving.contains(name)) {
+                moving.add(name);
+            }
+        }
+        mach.insertRotors(new String[] {
+            random.nextBoolean() ? "B" : "C",
+            random.nextBoolean() ? "Beta" : "Gamma",
+            moving.get(0), moving.get(1), moving.get(2)
+        });
+        StringBuilder setting = new StringBuilder();
+        for (int i = 0; i < 4; i += 1) {
+            setting.append(TestUtils.UPPER_STRING.charAt(random.nextInt(26)));
+        }
+        mach.setRotors(setting);
+        mach.setPlugboard(new Permutation(random.nextBoolean()
+                                          ? "(AQ) (WS) (ED)" : "", AZ));
+        return mach.compile();
+    }
+
+    @Test
+    public void testMatchesMachine() {
+        Random random = new Random(61);
+        Machine mach = machine();
+        int n = 200;
+        CompiledSettings[] settings = new CompiledSettings[n];
+        String[] msgs = new String[n];
+        for (int m = 0; m < n; m += 1) {
+            settings[m] = randomSettings(mach, random);
+            StringBuilder msg = new StringBuilder();
+            int length = random.nextInt(m % 10 == 0 ? 2000 : 60);
+            for (int i = 0; i < length; i += 1) {
+                msg.append(random.nextInt(6) == 0 ? ' '
+                           : TestUtils.UPPER_STRING.charAt(
+                                 random.nextInt(26)));
+            }
+            msgs[m] = msg.toString();
+        }
+
+        BatchMachine batch = new BatchMachine(mach);
+        assertTrue(batch.batched());
+        String[] result = batch.convert(settings, msgs);
+        for (int m = 0; m < n; m += 1) {
+            mach.apply(settings[m]);
+            assertEquals(mach.convert(msgs[m]), result[m]);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotInAlphabet() {
+        Machine mach = machine();
+        CompiledSettings settings = randomSettings(mach, new Random(61));
+        new BatchMachine(mach).convert(
+            new CompiledSettings[] { settings, settings },
+            new String[] { "HELLO", "world" });
+    }
+
+}
@@ -0,0 +1,448 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.*;
+
+/** A simulation of the Turing-Welchman Bombe: recovery of rotor order and
+ *  start positions from a crib, a stretch of known plaintext at a known
+ *  place in the ciphertext, without knowing the plugboard.
+ *
+ *  The crib and the ciphertext under it form a menu: a graph on letters
+ *  with an edge from P to C, labelled t, for each letter P of the crib
+ *  that enciphers to C at message letter t.  If the plugboard takes P to
+ *  p, then it takes C to S_t(p), where S_t is the permutation of the
+ *  rotors and reflector alone at letter t.  So for each key, a guess at
+ *  the plugboard partner of one menu letter (the test letter) implies
+ *  partners for every letter connected to it.  Each letter has a register
+ *  of candidate partners, a bitset; the guess is propagated through the
+ *  menu edges and the plugboard's symmetry (the diagonal board) until
+ *  nothing changes, and is refuted if any register gains two partners.
+ *  A key for which some guess survives is a stop, reported with the
+ *  plugboard pairs that guess implies.
+ *
+ *  For each key and menu position, the permutation of the slower rotors
+ *  and reflector is kept as a flat table, recomputed only when their
+ *  settings change, which is rare since only the fast rotor usually
+ *  moves.  S_t of a letter then costs three loads, and is computed only
+ *  when a guess needs it and remembered for the rest of the key: most
+ *  guesses are refuted after a few steps.  Keys are split among
+ *  fork/join tasks.
+ *  @author Katrina Sharonin
+ */
+final class Bombe {
+
+    /** A Bombe for messages on MACHINE, trying every rotor order its
+     *  configuration allows. */
+    Bombe(Machine machine) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        if (_size > Long.SIZE) {
+            throw error("the Bombe handles alphabets of at most %d letters",
+                        Long.SIZE);
+        }
+        _orders = KeySearch.rotorOrders(machine);
+        _steppers = new Stepper[_orders.size()];
+        for (int k = 0; k < _steppers.length; k += 1) {
+            _steppers[k] = new Stepper(Arrays.asList(_orders.get(k)), _size);
+        }
+        long positions = 1;
+        for (int i = 1; i < machine.numRotors(); i += 1) {
+            positions *= _size;
+            if (positions > Long.MAX_VALUE / Math.max(1, _orders.size())) {
+                throw error("too many keys for the Bombe");
+            }
+        }
+        _positions = positions;
+    }
+
+    /** Return the number of keys a run tries. */
+    long keys() {
+        return _orders.size() * _positions;
+    }
+
+    /** Return the stops for CRIB, whose first letter is letter OFFSET of
+     *  CIPHERTEXT (not counting whitespace in either), run on POOL, in
+     *  order of their settings lines. */
+    List<Stop> run(CharSequence crib, CharSequence ciphertext, int offset,
+                   ForkJoinPool pool) {
+        int[] plain = letters(crib);
+        int[] cipher = letters(ciphertext);
+        if (offset < 0 || offset + plain.length > cipher.length) {
+            throw error("crib does not fit in the ciphertext at %d", offset);
+        }
+        _menu = new Menu(plain, Arrays.copyOfRange(cipher, offset,
+                                                   offset + plain.length));
+        _offset = offset;
+        _stops = new ArrayList<>();
+        pool.invoke(new BombeTask(0, keys()));
+        Collections.sort(_stops);
+        return _stops;
+    }
+
+    /** Return the indices of the letters of TEXT, skipping whitespace. */
+    private int[] letters(CharSequence text) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char ch = text.charAt(i);
+            if (!Machine.isWhitespace(ch)) {
+                result[n] = _alphabet.toInt(ch);
+                if (result[n] == Alphabet.NOT_FOUND) {
+                    throw error("character %c not in alphabet", ch);
+                }
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Record STOP. */
+    private synchronized void stop(Stop stop) {
+        _stops.add(stop);
+    }
+
+    /** The menu of a crib: its letters' edges, in compressed form. */
+    private class Menu {
+
+        /** The menu of the crib PLAIN over the ciphertext CIPHER. */
+        Menu(int[] plain, int[] cipher) {
+            int[] degree = new int[_size];
+            for (int i = 0; i < plain.length; i += 1) {
+                if (plain[i] == cipher[i]) {
+                    throw error("crib letter %d enciphers to itself",
+                                i + 1);
+                }
+                degree[plain[i]] += 1;
+                degree[cipher[i]] += 1;
+            }
+            _first = new int[_size + 1];
+            for (int c = 0; c < _size; c += 1) {
+                _first[c + 1] = _first[c] + degree[c];
+            }
+            _to = new int[_first[_size]];
+            _at = new int[_first[_size]];
+            int[] fill = Arrays.copyOf(_first, _size);
+            for (int i = 0; i < plain.length; i += 1) {
+                _to[fill[plain[i]]] = cipher[i];
+                _at[fill[plain[i]]] = i;
+                fill[plain[i]] += 1;
+                _to[fill[cipher[i]]] = plain[i];
+                _at[fill[cipher[i]]] = i;
+                fill[cipher[i]] += 1;
+            }
+            int test = 0;
+            for (int c = 1; c < _size; c += 1) {
+                if (degree[c] > degree[test]) {
+                    test = c;
+                }
+            }
+            _test = test;
+            _length = plain.length;
+        }
+
+        /** Edges of letter c are _first[c] .. _first[c + 1] - 1. */
+        private final int[] _first;
+        /** The letter at the other end of each edge. */
+        private final int[] _to;
+        /** The crib position of each edge. */
+        private final int[] _at;
+        /** The test letter, one with the most edges. */
+        private final int _test;
+        /** Number of letters in the crib. */
+        private final int _length;
+    }
+
+    /** A fork/join task trying keys numbered LO <= K < HI, numbered so
+     *  that the fast rotor's setting varies fastest. */
+    private class BombeTask extends RecursiveAction {
+
+        /** A task for keys LO <= K < HI. */
+        BombeTask(long lo, long hi) {
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > LEAF_KEYS) {
+                long mid = (_lo + _hi) >>> 1;
+                invokeAll(new BombeTask(_lo, mid), new BombeTask(mid, _hi));
+                return;
+            }
+            if (_hi == _lo) {
+                return;
+            }
+            int slots = _orders.get(0).length;
+            int n = _menu._length;
+            _start = new int[slots];
+            _posns = new int[slots];
+            _inner = new int[n * _size];
+            _innerPosns = new int[n * slots];
+            Arrays.fill(_innerPosns, -1);
+            _stack = new int[n * _size];
+            _known = new int[n * _size];
+            _fastPosns = new int[n];
+            _registers = new long[_size];
+            _queue = new int[_size * _size];
+            int lastOrder = -1;
+            for (long key = _lo; key < _hi; key += 1) {
+                int order = (int) (key / _positions);
+                if (order != lastOrder) {
+                    Arrays.fill(_innerPosns, -1);
+                    lastOrder = order;
+                }
+                long p = key % _positions;
+                for (int i = slots - 1; i > 0; i -= 1) {
+                    _start[i] = (int) (p % _size);
+                    p /= _size;
+                }
+                tryKey(order);
+            }
+        }
+
+        /** Test the key with rotor order ORDER and start positions
+         *  _start. */
+        private void tryKey(int order) {
+            Rotor[] rotors = _orders.get(order);
+            Stepper stepper = _steppers[order];
+            int fast = rotors.length - 1;
+            System.arraycopy(_start, 0, _posns, 0, _start.length);
+            stepper.jump(_posns, _offset);
+            _fastRotor = rotors[fast];
+            for (int t = 0; t < _menu._length; t += 1) {
+                stepper.step(_posns);
+                updateInner(rotors, t);
+                _fastPosns[t] = _posns[fast];
+            }
+            _generation += 1;
+            for (int guess = 0; guess < _size; guess += 1) {
+                if (consistent(guess)) {
+                    stop(new Stop(rotors, _start, _registers, _alphabet));
+                }
+            }
+        }
+
+        /** Make _inner[T * size ...] the permutation, at menu position T
+         *  with the rotors at _posns, of all of ROTORS but the fast one
+         *  (in through them, off the reflector, and back), recomputing it
+         *  only if their settings differ from the last time. */
+        private void updateInner(Rotor[] rotors, int t) {
+            int fast = rotors.length - 1;
+            int slots = rotors.length;
+            boolean same = true;
+            for (int i = 0; i < fast && same; i += 1) {
+                same = _innerPosns[t * slots + i] == _posns[i];
+            }
+            if (same) {
+                return;
+            }
+            for (int i = 0; i < fast; i += 1) {
+                _innerPosns[t * slots + i] = _posns[i];
+            }
+            int base = t * _size;
+            for (int c = 0; c < _size; c += 1) {
+                int e = c;
+                for (int i = fast - 1; i >= 0; i -= 1) {
+                    e = rotors[i].convertForward(e, _posns[i]);
+                }
+                for (int i = 1; i < fast; i += 1) {
+                    e = rotors[i].convertBackward(e, _posns[i]);
+                }
+                _inner[base + c] = e;
+            }
+        }
+
+        /** Return true iff the guess that the test letter is plugged to
+         *  GUESS, propagated through the menu for the current key,
+         *  leaves no letter with two partners.  The registers are left
+         *  holding the implied partners. */
+        private boolean consistent(int guess) {
+            Arrays.fill(_registers, 0);
+            int head = 0, tail = 0;
+            if (!light(_menu._test, guess)) {
+                return false;
+            }
+            _queue[tail++] = _menu._test * _size + guess;
+            if (guess != _menu._test) {
+                _queue[tail++] = guess * _size + _menu._test;
+            }
+            while (head < tail) {
+                int entry = _queue[head++];
+                int a = entry / _size, v = entry % _size;
+                for (int e = _menu._first[a]; e < _menu._first[a + 1];
+                     e += 1) {
+                    int b = _menu._to[e];
+                    int w = stack(_menu._at[e], v);
+                    if ((_registers[b] & (1L << w)) != 0) {
+                        continue;
+                    }
+                    if (!light(b, w)) {
+                        return false;
+                    }
+                    _queue[tail++] = b * _size + w;
+                    if (b != w) {
+                        _queue[tail++] = w * _size + b;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Return S_T(C), the conversion of C by all the rotors at menu
+         *  position T, computing it if it is not yet known for the current
+         *  key.  S_T is an involution, so S_T(S_T(C)) becomes known too. */
+        private int stack(int t, int c) {
+            int k = t * _size + c;
+            if (_known[k] != _generation) {
+                int pf = _fastPosns[t];
+                int e = _fastRotor.convertBackward(
+                    _inner[t * _size + _fastRotor.convertForward(c, pf)], pf);
+                _stack[k] = e;
+                _known[k] = _generation;
+                _stack[t * _size + e] = c;
+                _known[t * _size + e] = _generation;
+            }
+            return _stack[k];
+        }
+
+        /** Record that letters A and B are plugged together, and return
+         *  false iff either then has two partners. */
+        private boolean light(int a, int b) {
+            _registers[a] |= 1L << b;
+            _registers[b] |= 1L << a;
+            return Long.bitCount(_registers[a]) == 1
+                && Long.bitCount(_registers[b]) == 1;
+        }
+
+        /** Range of keys tried by this task. */
+        private final long _lo, _hi;
+        /** Start positions of the current key. */
+        private int[] _start;
+        /** Rotor settings at the current menu position. */
+        private int[] _posns;
+        /** Permutation of the slow rotors and reflector at each menu
+         *  position, by position * size + letter. */
+        private int[] _inner;
+        /** Settings of the slow rotors from which each of _inner was
+         *  computed, by position * slots + slot, or -1. */
+        private int[] _innerPosns;
+        /** Setting of the fast rotor at each menu position. */
+        private int[] _fastPosns;
+        /** The fast rotor of the current key. */
+        private Rotor _fastRotor;
+        /** Permutation S_t of all the rotors at each menu position t, by
+         *  t * size + letter, where computed for the current key. */
+        private int[] _stack;
+        /** The value of _generation when each entry of _stack was
+         *  computed. */
+        private int[] _known;
+        /** Number of the current key among those this task has tried. */
+        private int _generation;
+        /** Candidate partners of each letter, as bitsets. */
+        private long[] _registers;
+        /** Letter pairs whose consequences are yet to be propagated, as
+         *  letter * size + partner. */
+        private int[] _queue;
+    }
+
+    /** A key at which the Bombe stopped: a rotor order and start
+     *  positions, and the plugboard pairs implied there.  Stops are
+     *  ordered by their settings lines. */
+    static final class Stop implements Comparable<Stop> {
+
+        /** The stop putting ROTORS[K] in slot K at setting POSNS[K] of
+         *  ALPHABET, where REGISTERS[C] has one bit set, for the partner
+         *  of C, for each letter C in the menu's component. */
+        Stop(Rotor[] rotors, int[] posns, long[] registers,
+             Alphabet alphabet) {
+            _rotors = new String[rotors.length];
+            for (int i = 0; i < rotors.length; i += 1) {
+                _rotors[i] = rotors[i].name();
+            }
+            StringBuilder setting = new StringBuilder();
+            for (int i = 1; i < posns.length; i += 1) {
+                setting.append(alphabet.toChar(posns[i]));
+            }
+            _setting = setting.toString();
+            StringBuilder pairs = new StringBuilder();
+            for (int c = 0; c < registers.length; c += 1) {
+                int partner = Long.numberOfTrailingZeros(registers[c]);
+                if (registers[c] != 0 && c < partner) {
+                    if (pairs.length() > 0) {
+                        pairs.append(' ');
+                    }
+                    pairs.append('(').append(alphabet.toChar(c))
+                        .append(alphabet.toChar(partner)).append(')');
+                }
+            }
+            _steckers = pairs.toString();
+        }
+
+        /** Return the names of my rotors, by slot. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my rotor settings, as for Machine.setRotors. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the plugboard pairs implied at this stop, in cycle
+         *  notation.  Only pairs reached from the test letter appear, and
+         *  letters implied to be unplugged are left out. */
+        String steckers() {
+            return _steckers;
+        }
+
+        /** Return the settings line for this stop, with the implied
+         *  plugboard pairs. */
+        String settingsLine() {
+            return "* " + String.join(" ", _rotors) + " " + _setting
+                + (_steckers.isEmpty() ? "" : " " + _steckers);
+        }
+
+        @Override
+        public int compareTo(Stop other) {
+            return settingsLine().compareTo(other.settingsLine());
+        }
+
+        @Override
+        public String toString() {
+            return settingsLine();
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+        /** My rotor settings. */
+        private final String _setting;
+        /** Implied plugboard pairs. */
+        private final String _steckers;
+    }
+
+    /** Keys tried by one fork/join task without splitting it further. */
+    static final int LEAF_KEYS = 1 << 10;
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Every rotor order to try, by slot. */
+    private final ArrayList<Rotor[]> _orders;
+    /** Stepping rules of each rotor order. */
+    private final Stepper[] _steppers;
+    /** Number of start positions for each rotor order. */
+    private final long _positions;
+    /** Menu of the current run. */
+    private Menu _menu;
+    /** Position of the crib in the ciphertext of the current run. */
+    private int _offset;
+    /** Stops found by the current run. */
+    private ArrayList<Stop> _stops;
+}
@@ -0,0 +1,80 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Katrina Sharonin
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTS ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    private static final String PLAINTEXT =
+        "WETTERVORHERSAGEBISKAYANACHTSSTURMAUSWESTENFUENFZEHNUHR";
+
+    /** A machine with four slots and three pawls, two reflectors and
+     *  three moving rotors, so that there are 12 rotor orders. */
+    private Machine machine() {
+        HashMap<String, String> nav = TestUtils.NAVALA;
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(nav.get("B"), AZ)));
+        rotors.add(new Reflector("C", new Permutation(nav.get("C"), AZ)));
+        rotors.add(new MovingRotor("I",
+                new Permutation(nav.get("I"), AZ), "Q"));
+        rotors.add(new MovingRotor("II",
+                new Permutation(nav.get("II"), AZ), "E"));
+        rotors.add(new MovingRotor("III",
+                new Permutation(nav.get("III"), AZ), "V"));
+        return new Machine(AZ, 4, 3, rotors);
+    }
+
+    @Test
+    public void testFindsKey() {
+        Machine mach = machine();
+        mach.insertRotors(new String[] { "B", "II", "III", "I" });
+        mach.setRotors("EQY");
+        mach.setPlugboard(
+            new Permutation("(WA) (EM) (TZ) (RK) (SN) (HO)", AZ));
+        String ciphertext = mach.convert(PLAINTEXT);
+
+        Bombe bombe = new Bombe(mach);
+        assertEquals(2 * 6 * 26 * 26 * 26, bombe.keys());
+        String crib = PLAINTEXT.substring(0, 25);
+        List<Bombe.Stop> stops =
+            bombe.run(crib, ciphertext, 0, ForkJoinPool.commonPool());
+        assertTrue(stops.size() < 20);
+        Bombe.Stop found = null;
+        for (Bombe.Stop stop : stops) {
+            if (stop.settingsLine().startsWith("* B II III I EQY ")) {
+                found = stop;
+            }
+        }
+        assertNotNull(found);
+        assertEquals("(AW) (EM) (HO) (KR) (NS) (TZ)", found.steckers());
+
+        mach.insertRotors(found.rotors());
+        mach.setRotors(found.setting());
+        mach.setPlugboard(new Permutation(found.steckers(), AZ));
+        assertEquals(PLAINTEXT, mach.convert(ciphertext));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSelfEncipherment() {
+        Machine mach = machine();
+        new Bombe(mach).run("ABC", "XBZ", 0, ForkJoinPool.commonPool());
+    }
+
+}
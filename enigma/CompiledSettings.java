@@ -0,0 +1,55 @@
+package enigma;
+
+/** A settings line resolved against a machine configuration: the index,
+ *  among the machine's available rotors, of the rotor in each slot, the
+ *  setting of each, and the plugboard.  Applying one to a machine built
+ *  from the same configuration (or a copy of it) with Machine.apply takes
+ *  a handful of array writes, with no parsing or name lookup.
+ *  @author Katrina Sharonin
+ */
+final class CompiledSettings {
+
+    /** Settings putting available rotor ROTORS[K] in slot K at setting
+     *  POSNS[K] (0 for the reflector), with plugboard PLUGBOARD.  The
+     *  arrays are not copied, and must not be changed. */
+    CompiledSettings(int[] rotors, int[] posns, Permutation plugboard) {
+        _rotors = rotors;
+        _posns = posns;
+        _plugboard = plugboard;
+    }
+
+    /** Return the number of slots I fill. */
+    int numRotors() {
+        return _rotors.length;
+    }
+
+    /** Return the index among the available rotors of the rotor in
+     *  slot K. */
+    int rotor(int k) {
+        return _rotors[k];
+    }
+
+    /** Return the settings of the rotors in each slot, indexed by slot.
+     *  The result must not be changed. */
+    int[] settings() {
+        return _posns;
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Return these settings with PLUGBOARD, which must have the same
+     *  mapping as mine, in place of my plugboard. */
+    CompiledSettings withPlugboard(Permutation plugboard) {
+        return new CompiledSettings(_rotors, _posns, plugboard);
+    }
+
+    /** Indices of my rotors among the available rotors, by slot. */
+    private final int[] _rotors;
+    /** Settings of my rotors, by slot. */
+    private final int[] _posns;
+    /** My plugboard. */
+    private final Permutation _plugboard;
+}
@@ -0,0 +1,264 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** Precompiled binary images of configuration files, so that a machine
+ *  can be built without scanning and parsing its text configuration.
+ *  The image of CONFIG is normally kept beside it, in CONFIG.img.
+ *
+ *  An image is a sequence of big-endian fields:
+ *      int    MAGIC, int VERSION
+ *      long   length and int CRC-32 of the text configuration it came from
+ *      string the alphabet
+ *      int    number of rotor slots, int number of pawls
+ *      int    number of rotors, then for each rotor
+ *             string name, byte kind ('M', 'N' or 'R'), string notches,
+ *             and the index each index of the alphabet maps to, as chars
+ *      int    CRC-32 of all the preceding bytes
+ *  where a string is an int length followed by that many chars.  An image
+ *  whose version, checksum or source length and checksum do not match is
+ *  stale, and is ignored.
+ *  @author Katrina Sharonin
+ */
+final class ConfigImage {
+
+    /** First field of every image ("ENIG"). */
+    static final int MAGIC = 0x454E4947;
+
+    /** Version of the image layout. */
+    static final int VERSION = 1;
+
+    /** Images at least this many bytes long are memory-mapped rather
+     *  than read. */
+    static final long MAP_THRESHOLD = 1 << 20;
+
+    /** Suffix added to a configuration file's name to name its image. */
+    static final String SUFFIX = ".img";
+
+    /** Not instantiable. */
+    private ConfigImage() {
+    }
+
+    /** Return the name of the default image of the configuration file
+     *  named CONFIG. */
+    static String imageName(String config) {
+        return config + SUFFIX;
+    }
+
+    /** Write an image of MACHINE, which was read from the configuration
+     *  file named CONFIG, to the file named IMAGE.  The image is written
+     *  to a temporary file first, so that readers never see part of
+     *  one. */
+    static void write(Machine machine, String config, String image) {
+        Path target = Paths.get(image);
+        Path temp = null;
+        try {
+            byte[] source = Files.readAllBytes(Paths.get(config));
+            ByteBuffer buf = encode(machine, source);
+            temp = target.resolveSibling(target.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                out.write(buf.array(), 0, buf.position());
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        } catch (IOException excp) {
+            throw error("could not write %s: %s", image, excp.getMessage());
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException excp) {
+                    /* Ignore: the write has already failed. */
+                }
+            }
+        }
+    }
+
+    /** Return a machine built from the image of the configuration file
+     *  named CONFIG, or null if the image is missing or stale. */
+    static Machine load(String config) {
+        ByteBuffer image;
+        byte[] source;
+        try {
+            image = read(Paths.get(imageName(config)));
+            source = Files.readAllBytes(Paths.get(config));
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw error("could not read %s: %s", imageName(config),
+                        excp.getMessage());
+        }
+        return decode(image, source);
+    }
+
+    /** Return the contents of the file at PATH, memory-mapped if it is
+     *  large. */
+    private static ByteBuffer read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            ByteBuffer buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining() && channel.read(buf) >= 0) {
+                continue;
+            }
+            buf.flip();
+            return buf;
+        }
+    }
+
+    /** Return a buffer holding the image of MACHINE, read from the
+     *  configuration file whose contents are SOURCE, from 0 up to its
+     *  position. */
+    static ByteBuffer encode(Machine machine, byte[] source) {
+        Alphabet alpha = machine.alphabet();
+        int size = alpha.size();
+        List<Rotor> rotors = machine.availableRotors();
+        long length = 0;
+        for (Rotor rotor : rotors) {
+            length += Integer.BYTES * 2 + 1 + Character.BYTES
+                * (rotor.name().length() + notches(rotor).length() + size);
+        }
+        length += Integer.BYTES * 8 + Long.BYTES + Character.BYTES * size;
+        if (length > Integer.MAX_VALUE) {
+            throw error("configuration too large for an image");
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate((int) length);
+        buf.putInt(MAGIC).putInt(VERSION);
+        buf.putLong(source.length).putInt(checksum(source));
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < size; i += 1) {
+            chars.append(alpha.toChar(i));
+        }
+        putString(buf, chars.toString());
+        buf.putInt(machine.numRotors()).putInt(machine.numPawls());
+        buf.putInt(rotors.size());
+        for (Rotor rotor : rotors) {
+            putString(buf, rotor.name());
+            if (rotor.reflecting()) {
+                buf.put((byte) 'R');
+            } else if (rotor.rotates()) {
+                buf.put((byte) 'M');
+            } else {
+                buf.put((byte) 'N');
+            }
+            putString(buf, notches(rotor));
+            Permutation perm = rotor.permutation();
+            for (int i = 0; i < size; i += 1) {
+                buf.putChar((char) perm.permute(i));
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt((int) crc.getValue());
+        return buf;
+    }
+
+    /** Return the machine whose image is IMAGE, or null if IMAGE is stale
+     *  or is not the image of a configuration file with contents
+     *  SOURCE. */
+    static Machine decode(ByteBuffer image, byte[] source) {
+        try {
+            if (image.remaining() < Integer.BYTES * 2
+                || image.getInt(image.position()) != MAGIC
+                || image.getInt(image.position() + Integer.BYTES)
+                   != VERSION) {
+                return null;
+            }
+            int end = image.limit() - Integer.BYTES;
+            ByteBuffer body = image.duplicate();
+            body.limit(end);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != image.getInt(end)) {
+                return null;
+            }
+            image.position(image.position() + Integer.BYTES * 2);
+            if (image.getLong() != source.length
+                || image.getInt() != checksum(source)) {
+                return null;
+            }
+
+            Alphabet alpha = new Alphabet(getString(image));
+            int size = alpha.size();
+            int slots = image.getInt();
+            int pawls = image.getInt();
+            int count = image.getInt();
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            for (int k = 0; k < count; k += 1) {
+                String name = getString(image);
+                byte kind = image.get();
+                String notches = getString(image);
+                /* MovingRotor drops one leading 'M' from its notches, as
+                 * in the text configuration. */
+                int[] forward = new int[size];
+                for (int i = 0; i < size; i += 1) {
+                    forward[i] = image.getChar();
+                }
+                Permutation perm = new Permutation(forward, alpha);
+                if (kind == 'M') {
+                    rotors.add(new MovingRotor(name, perm, "M" + notches));
+                } else if (kind == 'N') {
+                    rotors.add(new FixedRotor(name, perm));
+                } else {
+                    rotors.add(new Reflector(name, perm));
+                }
+            }
+            return new Machine(alpha, slots, pawls, rotors);
+        } catch (BufferUnderflowException | IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** Return the notches of ROTOR, which are empty unless it moves. */
+    private static String notches(Rotor rotor) {
+        return rotor.rotates() ? rotor.notches() : "";
+    }
+
+    /** Return the CRC-32 of BYTES. */
+    private static int checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+
+    /** Append the length and chars of S to BUF. */
+    private static void putString(ByteBuffer buf, String s) {
+        buf.putInt(s.length());
+        for (int i = 0; i < s.length(); i += 1) {
+            buf.putChar(s.charAt(i));
+        }
+    }
+
+    /** Return the next string (a length and that many chars) in BUF. */
+    private static String getString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining() / Character.BYTES) {
+            throw new BufferUnderflowException();
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            chars[i] = buf.getChar();
+        }
+        return new String(chars);
+    }
+
+}
@@ -0,0 +1,96 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the ConfigImage class.
+ *  @author Katrina Sharonin
+ */
+public class ConfigImageTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    private static final byte[] SOURCE =
+        "pretend configuration".getBytes(StandardCharsets.UTF_8);
+
+    /** A machine with one rotor of each kind, and two notches on its
+     *  moving rotor. */
+    private Machine machine() {
+        HashMap<String, String> nav = TestUtils.NAVALA;
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(nav.get("B"), AZ)));
+        rotors.add(new FixedRotor("Beta",
+                new Permutation(nav.get("Beta"), AZ)));
+        rotors.add(new MovingRotor("VI",
+                new Permutation(nav.get("VI"), AZ), "ZM"));
+        rotors.add(new MovingRotor("I",
+                new Permutation(nav.get("I"), AZ), "Q"));
+        return new Machine(AZ, 4, 2, rotors);
+    }
+
+    /** Return the image of M, ready to be decoded. */
+    private ByteBuffer image(Machine m) {
+        ByteBuffer buf = ConfigImage.encode(m, SOURCE);
+        buf.flip();
+        return buf;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Machine original = machine();
+        Machine loaded = ConfigImage.decode(image(original), SOURCE);
+        assertNotNull(loaded);
+        assertEquals(4, loaded.numRotors());
+        assertEquals(2, loaded.numPawls());
+        assertEquals(TestUtils.UPPER_STRING.length(),
+                     loaded.alphabet().size());
+        assertEquals(4, loaded.availableRotors().size());
+        for (int k = 0; k < 4; k += 1) {
+            Rotor a = original.availableRotors().get(k);
+            Rotor b = loaded.availableRotors().get(k);
+            assertEquals(a.name(), b.name());
+            assertEquals(a.getClass(), b.getClass());
+            for (int i = 0; i < AZ.size(); i += 1) {
+                assertEquals(a.permutation().permute(i),
+                             b.permutation().permute(i));
+                assertEquals(a.permutation().invert(i),
+                             b.permutation().invert(i));
+            }
+        }
+        assertEquals("ZM", loaded.availableRotors().get(2).notches());
+
+        String[] names = { "B", "Beta", "VI", "I" };
+        original.insertRotors(names);
+        loaded.insertRotors(names);
+        original.setRotors("AZY");
+        loaded.setRotors("AZY");
+        original.setPlugboard(new Permutation("(AQ) (EP)", AZ));
+        loaded.setPlugboard(new Permutation("(AQ) (EP)", loaded.alphabet()));
+        String msg = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG";
+        assertEquals(original.convert(msg), loaded.convert(msg));
+    }
+
+    @Test
+    public void testStale() {
+        ByteBuffer buf = image(machine());
+        byte[] edited = SOURCE.clone();
+        edited[0] = 'P';
+        assertNull(ConfigImage.decode(buf.duplicate(), edited));
+        buf.put(buf.limit() / 2, (byte) (buf.get(buf.limit() / 2) ^ 1));
+        assertNull(ConfigImage.decode(buf.duplicate(), SOURCE));
+        assertNull(ConfigImage.decode(ByteBuffer.allocate(3), SOURCE));
+    }
+
+}
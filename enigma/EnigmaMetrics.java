@@ -0,0 +1,220 @@
+package enigma;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/** Process-wide encryption throughput counters, published as the JMX
+ *  MBean enigma:type=Metrics.  The counters are striped (LongAdder), so
+ *  that concurrent machines do not contend on them; Machine batches its
+ *  per-character counts and adds them once per message or section.
+ *  @author Katrina Sharonin
+ */
+public final class EnigmaMetrics implements EnigmaMetricsMBean {
+
+    /** Name under which the metrics are registered. */
+    static final String OBJECT_NAME = "enigma:type=Metrics";
+
+    /** Number of section-latency buckets.  Bucket K holds latencies
+     *  below 2**K microseconds that are not in bucket K - 1; the last
+     *  bucket holds the rest. */
+    static final int LATENCY_BUCKETS = 32;
+
+    /** Return the process-wide metrics, registering them with the
+     *  platform MBean server the first time. */
+    static EnigmaMetrics get() {
+        return Holder.INSTANCE;
+    }
+
+    /** Holds the lazily created instance. */
+    private static class Holder {
+        /** The process-wide metrics. */
+        static final EnigmaMetrics INSTANCE = register(new EnigmaMetrics());
+    }
+
+    /** Register METRICS with the platform MBean server, if possible, and
+     *  return it. */
+    private static EnigmaMetrics register(EnigmaMetrics metrics) {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(metrics, new ObjectName(OBJECT_NAME));
+        } catch (JMException | SecurityException excp) {
+            /* Metrics still count; they just are not visible remotely. */
+        }
+        return metrics;
+    }
+
+    /** New metrics, all 0. */
+    private EnigmaMetrics() {
+        for (int k = 0; k < LATENCY_BUCKETS; k += 1) {
+            _latency[k] = new LongAdder();
+        }
+    }
+
+    /** Record that a machine converted CHARS characters, advancing rotors
+     *  STEPS times, DOUBLESTEPS of them double steps. */
+    void converted(long chars, long steps, long doubleSteps) {
+        if (chars != 0) {
+            _chars.add(chars);
+        }
+        if (steps != 0) {
+            _steps.add(steps);
+        }
+        if (doubleSteps != 0) {
+            _doubleSteps.add(doubleSteps);
+        }
+    }
+
+    /** Record that a machine's composed cache answered HITS conversions,
+     *  missed MISSES, and dropped EVICTIONS rotor states. */
+    void cacheUsed(long hits, long misses, long evictions) {
+        if (hits != 0) {
+            _cacheHits.add(hits);
+        }
+        if (misses != 0) {
+            _cacheMisses.add(misses);
+        }
+        if (evictions != 0) {
+            _cacheEvictions.add(evictions);
+        }
+    }
+
+    /** Record that a settings line was applied. */
+    void settingsApplied() {
+        _settings.increment();
+    }
+
+    /** Record that a plugboard with a new mapping was installed. */
+    void plugboardRebuilt() {
+        _plugboards.increment();
+    }
+
+    /** Record that a section took NANOS nanoseconds to process. */
+    void sectionProcessed(long nanos) {
+        long micros = Math.max(0, nanos / NANOS_PER_MICRO);
+        int bucket = Math.min(LATENCY_BUCKETS - 1,
+                              64 - Long.numberOfLeadingZeros(micros));
+        _latency[bucket].increment();
+        _sections.increment();
+        _sectionNanos.add(nanos);
+    }
+
+    @Override
+    public long getCharactersConverted() {
+        return _chars.sum();
+    }
+
+    @Override
+    public long getSettingsLinesApplied() {
+        return _settings.sum();
+    }
+
+    @Override
+    public long getRotorSteps() {
+        return _steps.sum();
+    }
+
+    @Override
+    public long getDoubleSteps() {
+        return _doubleSteps.sum();
+    }
+
+    @Override
+    public long getPlugboardRebuilds() {
+        return _plugboards.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return _cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return _cacheMisses.sum();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return _cacheEvictions.sum();
+    }
+
+    @Override
+    public long getSectionsProcessed() {
+        return _sections.sum();
+    }
+
+    @Override
+    public double getMeanSectionLatencyMicros() {
+        long sections = _sections.sum();
+        if (sections == 0) {
+            return 0;
+        }
+        return (double) _sectionNanos.sum() / NANOS_PER_MICRO / sections;
+    }
+
+    @Override
+    public long[] getSectionLatencyBucketsMicros() {
+        long[] bounds = new long[LATENCY_BUCKETS];
+        for (int k = 0; k < LATENCY_BUCKETS - 1; k += 1) {
+            bounds[k] = 1L << k;
+        }
+        bounds[LATENCY_BUCKETS - 1] = Long.MAX_VALUE;
+        return bounds;
+    }
+
+    @Override
+    public long[] getSectionLatencyHistogram() {
+        long[] counts = new long[LATENCY_BUCKETS];
+        for (int k = 0; k < LATENCY_BUCKETS; k += 1) {
+            counts[k] = _latency[k].sum();
+        }
+        return counts;
+    }
+
+    @Override
+    public void reset() {
+        _chars.reset();
+        _settings.reset();
+        _steps.reset();
+        _doubleSteps.reset();
+        _plugboards.reset();
+        _cacheHits.reset();
+        _cacheMisses.reset();
+        _cacheEvictions.reset();
+        _sections.reset();
+        _sectionNanos.reset();
+        for (LongAdder bucket : _latency) {
+            bucket.reset();
+        }
+    }
+
+    /** Nanoseconds in a microsecond. */
+    private static final long NANOS_PER_MICRO = 1000;
+
+    /** Characters converted. */
+    private final LongAdder _chars = new LongAdder();
+    /** Settings lines applied. */
+    private final LongAdder _settings = new LongAdder();
+    /** Rotor advances. */
+    private final LongAdder _steps = new LongAdder();
+    /** Double steps. */
+    private final LongAdder _doubleSteps = new LongAdder();
+    /** Plugboard rebuilds. */
+    private final LongAdder _plugboards = new LongAdder();
+    /** Conversions answered from a composed cache. */
+    private final LongAdder _cacheHits = new LongAdder();
+    /** Conversions that missed a composed cache. */
+    private final LongAdder _cacheMisses = new LongAdder();
+    /** Rotor states dropped from a composed cache. */
+    private final LongAdder _cacheEvictions = new LongAdder();
+    /** Sections processed. */
+    private final LongAdder _sections = new LongAdder();
+    /** Total section processing time, in nanoseconds. */
+    private final LongAdder _sectionNanos = new LongAdder();
+    /** Section latency histogram. */
+    private final LongAdder[] _latency = new LongAdder[LATENCY_BUCKETS];
+
+}
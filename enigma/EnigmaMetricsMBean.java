@@ -0,0 +1,56 @@
+package enigma;
+
+/** The management interface of EnigmaMetrics, as seen from JConsole or
+ *  any other JMX client.
+ *  @author Katrina Sharonin
+ */
+public interface EnigmaMetricsMBean {
+
+    /** Return the number of characters converted. */
+    long getCharactersConverted();
+
+    /** Return the number of settings lines applied. */
+    long getSettingsLinesApplied();
+
+    /** Return the number of individual rotor advances. */
+    long getRotorSteps();
+
+    /** Return the number of rotor advances caused by a rotor's own notch
+     *  (double steps). */
+    long getDoubleSteps();
+
+    /** Return the number of plugboards installed with a new mapping. */
+    long getPlugboardRebuilds();
+
+    /** Return the number of conversions answered from the composed
+     *  caches of machines run with --cache. */
+    long getCacheHits();
+
+    /** Return the number of conversions that missed those caches and
+     *  went through the plugboard and rotors. */
+    long getCacheMisses();
+
+    /** Return the number of rotor states dropped from those caches to
+     *  make room for others or because the rotors or plugboard
+     *  changed. */
+    long getCacheEvictions();
+
+    /** Return the number of sections (a settings line and the messages
+     *  after it) processed. */
+    long getSectionsProcessed();
+
+    /** Return the mean time taken to process a section, in microseconds. */
+    double getMeanSectionLatencyMicros();
+
+    /** Return the upper bounds, in microseconds, of the buckets of
+     *  getSectionLatencyHistogram.  The last bucket is unbounded. */
+    long[] getSectionLatencyBucketsMicros();
+
+    /** Return the number of sections whose processing time fell in each
+     *  bucket. */
+    long[] getSectionLatencyHistogram();
+
+    /** Set all counts to 0. */
+    void reset();
+
+}
@@ -19,11 +19,6 @@ class FixedRotor extends Rotor {
         throw new EnigmaException("FixedRotor: no notches allowed");
     }
 
-    @Override
-    void advance() {
-        throw new EnigmaException("FixedRotor: no advance");
-    }
-
     @Override
     boolean rotates() {
         return false;
@@ -14,12 +14,20 @@ public class FixedRotorTest {
     @Rule
     public Timeout globalTimeout = Timeout.seconds(5);
 
-    @Test (expected = EnigmaException.class)
-    public void advanceFailTest() {
+    @Test
+    public void noAdvanceTest() {
         Alphabet alphy = new Alphabet("(ABCD)");
         Permutation permy = new Permutation("(AD)(B)", alphy);
         FixedRotor rotory = new FixedRotor("VII", permy);
-        rotory.advance();
+        assertFalse(rotory.rotates());
+        assertFalse(rotory.atNotch(0));
+    }
+
+    @Test (expected = EnigmaException.class)
+    public void notchesFailTest() {
+        Alphabet alphy = new Alphabet("(ABCD)");
+        Permutation permy = new Permutation("(AD)(B)", alphy);
+        new FixedRotor("VII", permy).notches();
     }
 
 }
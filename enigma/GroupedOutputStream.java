@@ -0,0 +1,86 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** The counterpart of GroupedWriter for single-byte text: an OutputStream
+ *  that puts a space after every so many letters of a line, buffering
+ *  its output and passing it on to another OutputStream in large blocks.
+ *  Each '\n' written ends a line; letters written by successive calls are
+ *  grouped as if written all at once.
+ *  @author Katrina Sharonin
+ */
+final class GroupedOutputStream extends OutputStream {
+
+    /** A stream on OUT that puts a space after every GROUP letters of a
+     *  line, or writes letters as they are if GROUP is 0. */
+    GroupedOutputStream(OutputStream out, int group) {
+        _grouping = new Grouping(group);
+        _out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        _one[0] = (byte) b;
+        write(_one, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        byte[] buf = _buf;
+        Grouping grouping = _grouping;
+        int pos = _pos;
+        for (int i = off, end = off + len; i < end; i += 1) {
+            if (buf.length - pos < 2) {
+                _pos = pos;
+                flushBuffer();
+                pos = 0;
+            }
+            byte ch = b[i];
+            if (grouping.spaceBefore(ch)) {
+                buf[pos++] = ' ';
+            }
+            buf[pos++] = ch;
+        }
+        _pos = pos;
+    }
+
+    /** End the current line. */
+    void endLine() throws IOException {
+        write('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        _out.close();
+    }
+
+    /** Pass the contents of my buffer on to my underlying stream. */
+    private void flushBuffer() throws IOException {
+        if (_pos > 0) {
+            _out.write(_buf, 0, _pos);
+            _pos = 0;
+        }
+    }
+
+    /** Size of my buffer, in bytes. */
+    static final int BUFFER = 1 << 16;
+
+    /** Destination of my output. */
+    private final OutputStream _out;
+    /** Where the spaces go. */
+    private final Grouping _grouping;
+    /** Output waiting to be passed on to _out. */
+    private final byte[] _buf = new byte[BUFFER];
+    /** Number of bytes in _buf. */
+    private int _pos;
+    /** Buffer for write(int). */
+    private final byte[] _one = new byte[1];
+}
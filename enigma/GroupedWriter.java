@@ -0,0 +1,110 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static enigma.EnigmaException.*;
+
+/** A Writer that prints converted messages in groups of letters separated
+ *  by single spaces, as Main does, into a buffer that it passes on to
+ *  another Writer in large blocks.  Each '\n' written ends a line, and the
+ *  next group starts with the next letter after it; otherwise the letters
+ *  written by successive calls are grouped as if written all at once, so
+ *  messages may be written in chunks of any size.
+ *  @author Katrina Sharonin
+ */
+final class GroupedWriter extends Writer {
+
+    /** A writer on OUT that puts a space after every GROUP letters of a
+     *  line, or writes letters as they are if GROUP is 0. */
+    GroupedWriter(Writer out, int group) {
+        this(out, group, BUFFER);
+    }
+
+    /** A writer on OUT that puts a space after every GROUP letters of a
+     *  line, or writes letters as they are if GROUP is 0, buffering
+     *  BUFFERSIZE characters at a time. */
+    GroupedWriter(Writer out, int group, int bufferSize) {
+        _grouping = new Grouping(group);
+        if (bufferSize < 2) {
+            throw error("buffer too small");
+        }
+        _out = out;
+        _buf = new char[bufferSize];
+        _chars = new char[bufferSize / 2];
+    }
+
+    /** Return the number of letters in each of my groups, or 0 if I do
+     *  not group letters. */
+    int group() {
+        return _grouping.group();
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        char[] buf = _buf;
+        Grouping grouping = _grouping;
+        int pos = _pos;
+        for (int i = off, end = off + len; i < end; i += 1) {
+            if (buf.length - pos < 2) {
+                _pos = pos;
+                flushBuffer();
+                pos = 0;
+            }
+            char ch = cbuf[i];
+            if (grouping.spaceBefore(ch)) {
+                buf[pos++] = ' ';
+            }
+            buf[pos++] = ch;
+        }
+        _pos = pos;
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        for (int i = off, end = off + len; i < end; i += _chars.length) {
+            int n = Math.min(_chars.length, end - i);
+            str.getChars(i, i + n, _chars, 0);
+            write(_chars, 0, n);
+        }
+    }
+
+    /** End the current line. */
+    void endLine() throws IOException {
+        write('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        _out.close();
+    }
+
+    /** Pass the contents of my buffer on to my underlying Writer. */
+    private void flushBuffer() throws IOException {
+        if (_pos > 0) {
+            _out.write(_buf, 0, _pos);
+            _pos = 0;
+        }
+    }
+
+    /** Default size of my buffer, in characters. */
+    static final int BUFFER = 1 << 16;
+
+    /** Destination of my output. */
+    private final Writer _out;
+    /** Where the spaces go. */
+    private final Grouping _grouping;
+    /** Output waiting to be passed on to _out. */
+    private final char[] _buf;
+    /** Number of characters in _buf. */
+    private int _pos;
+    /** Characters of a String being written. */
+    private final char[] _chars;
+}
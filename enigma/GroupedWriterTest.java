@@ -0,0 +1,69 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the GroupedWriter class.
+ *  @author Katrina Sharonin
+ */
+public class GroupedWriterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testGroups() throws IOException {
+        StringWriter text = new StringWriter();
+        GroupedWriter out = new GroupedWriter(text, 5);
+        out.write("ABCDEFGHIJKL");
+        out.endLine();
+        out.write("ABCDE");
+        out.endLine();
+        out.endLine();
+        out.write("AB\nCDEFGH\n");
+        assertEquals("", text.toString());
+        out.flush();
+        assertEquals("ABCDE FGHIJ KL\nABCDE\n\nAB\nCDEFG H\n",
+                     text.toString());
+    }
+
+    @Test
+    public void testChunks() throws IOException {
+        String msg = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        StringWriter whole = new StringWriter();
+        GroupedWriter out = new GroupedWriter(whole, 5);
+        out.write(msg);
+        out.flush();
+        for (int chunk = 1; chunk <= 7; chunk += 1) {
+            StringWriter text = new StringWriter();
+            out = new GroupedWriter(text, 5, 3);
+            for (int i = 0; i < msg.length(); i += chunk) {
+                char[] part =
+                    msg.substring(i, Math.min(i + chunk, msg.length()))
+                    .toCharArray();
+                out.write(part, 0, part.length);
+            }
+            out.flush();
+            assertEquals(whole.toString(), text.toString());
+        }
+    }
+
+    @Test
+    public void testRaw() throws IOException {
+        StringWriter text = new StringWriter();
+        GroupedWriter out = new GroupedWriter(text, 0, 4);
+        out.write("ABCDEFGHIJKL");
+        out.endLine();
+        out.write("MNOP");
+        out.close();
+        assertEquals("ABCDEFGHIJKL\nMNOP", text.toString());
+    }
+
+}
@@ -0,0 +1,48 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The rule by which GroupedWriter and GroupedOutputStream divide the
+ *  letters of each line of converted text into groups separated by
+ *  single spaces.  Characters are fed to it one at a time, as they are
+ *  written, so that a line may be written in pieces of any size.
+ *  @author Katrina Sharonin
+ */
+final class Grouping {
+
+    /** A grouping of GROUP letters at a time, or no grouping if GROUP
+     *  is 0. */
+    Grouping(int group) {
+        if (group < 0) {
+            throw error("group size must be >= 0");
+        }
+        _group = group;
+    }
+
+    /** Return the number of letters in each group, or 0 if letters are
+     *  not grouped. */
+    int group() {
+        return _group;
+    }
+
+    /** Return true iff a space must be written before CH, the next
+     *  character written.  A '\n' ends the line, and the letter after it
+     *  starts a new group. */
+    boolean spaceBefore(int ch) {
+        if (ch == '\n') {
+            _count = 0;
+            return false;
+        }
+        if (_count == _group && _group > 0) {
+            _count = 1;
+            return true;
+        }
+        _count += 1;
+        return false;
+    }
+
+    /** Letters per group, or 0 for none. */
+    private final int _group;
+    /** Number of letters written in the current group. */
+    private int _count;
+}
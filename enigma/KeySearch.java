@@ -0,0 +1,434 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Ciphertext-only recovery of rotor order and start positions by
+ *  exhaustive search.  Every rotor order that a machine's configuration
+ *  allows (a reflector, then fixed rotors, then moving rotors in the last
+ *  numPawls() slots) is tried at every combination of start positions,
+ *  with a known plugboard.  Each candidate decryption is scored by its
+ *  index of coincidence, which is high for natural-language text and low
+ *  for random letters; the best few candidates are kept.
+ *
+ *  Candidates are numbered from 0 to keys() - 1, and the numbers are
+ *  split among fork/join tasks, so that idle workers steal what is left.
+ *  Scoring a candidate allocates nothing: it runs the rotors directly
+ *  from precomputed Steppers, counting output letters in a per-task
+ *  array.  A candidate whose first quarter already scores far below the
+ *  current worst of the best few is abandoned there.
+ *  @author Katrina Sharonin
+ */
+final class KeySearch {
+
+    /** A search for the TOPK best keys for messages on MACHINE, whose
+     *  numbers of slots and pawls and available rotors it uses. */
+    KeySearch(Machine machine, int topK) {
+        if (topK < 1) {
+            throw error("must keep at least one candidate");
+        }
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _topK = topK;
+        int slots = machine.numRotors();
+        _orders = rotorOrders(machine);
+        long positions = 1;
+        for (int i = 1; i < slots; i += 1) {
+            if (positions > Long.MAX_VALUE / _size) {
+                throw error("too many start positions to search");
+            }
+            positions *= _size;
+        }
+        _positions = positions;
+        if (!_orders.isEmpty()
+            && _positions > Long.MAX_VALUE / _orders.size()) {
+            throw error("too many keys to search");
+        }
+        _steppers = new Stepper[_orders.size()];
+        for (int k = 0; k < _steppers.length; k += 1) {
+            _steppers[k] = new Stepper(Arrays.asList(_orders.get(k)), _size);
+        }
+    }
+
+    /** Return every rotor order, by slot, that MACHINE's configuration
+     *  allows: a reflector, then distinct fixed rotors, then distinct
+     *  moving rotors in the last numPawls() slots. */
+    static ArrayList<Rotor[]> rotorOrders(Machine machine) {
+        ArrayList<Rotor> reflectors = new ArrayList<>();
+        ArrayList<Rotor> fixed = new ArrayList<>();
+        ArrayList<Rotor> moving = new ArrayList<>();
+        for (Rotor rotor : machine.availableRotors()) {
+            if (rotor.reflecting()) {
+                reflectors.add(rotor);
+            } else if (rotor.rotates()) {
+                moving.add(rotor);
+            } else {
+                fixed.add(rotor);
+            }
+        }
+        ArrayList<Rotor[]> orders = new ArrayList<>();
+        Rotor[] order = new Rotor[machine.numRotors()];
+        for (Rotor reflector : reflectors) {
+            order[0] = reflector;
+            addOrders(orders, order, 1,
+                      machine.numRotors() - machine.numPawls(),
+                      fixed, moving);
+        }
+        return orders;
+    }
+
+    /** Add to ORDERS every completion of ORDER, whose slots before SLOT
+     *  are filled, that puts distinct rotors of FIXED in the slots before
+     *  FIRSTMOVING and distinct rotors of MOVING in the rest. */
+    private static void addOrders(List<Rotor[]> orders, Rotor[] order,
+                                  int slot, int firstMoving,
+                                  List<Rotor> fixed, List<Rotor> moving) {
+        if (slot == order.length) {
+            orders.add(order.clone());
+            return;
+        }
+        for (Rotor rotor : slot < firstMoving ? fixed : moving) {
+            boolean used = false;
+            for (int i = 1; i < slot && !used; i += 1) {
+                used = order[i] == rotor;
+            }
+            if (!used) {
+                order[slot] = rotor;
+                addOrders(orders, order, slot + 1, firstMoving, fixed,
+                          moving);
+            }
+        }
+    }
+
+    /** Return the number of keys a search tries. */
+    long keys() {
+        return _orders.size() * _positions;
+    }
+
+    /** Send each candidate that enters the best few during a search to
+     *  LISTENER, or to no one if it is null.  It is called by one worker
+     *  at a time, in no particular order of score. */
+    void setListener(Consumer<Candidate> listener) {
+        _listener = listener;
+    }
+
+    /** Print the number of keys tried and the rate on PROGRESS every
+     *  INTERVAL milliseconds during a search, or not at all if PROGRESS
+     *  is null. */
+    void setProgress(PrintStream progress, long interval) {
+        _progress = progress;
+        _interval = interval;
+    }
+
+    /** Return the number of keys tried (or abandoned) so far by the
+     *  current or last search. */
+    long keysTried() {
+        return _tried.sum();
+    }
+
+    /** Return the best candidates for CIPHERTEXT, whose whitespace is
+     *  ignored, with plugboard PLUGBOARD (null for none), best first,
+     *  searching on POOL. */
+    List<Candidate> search(CharSequence ciphertext, Permutation plugboard,
+                           ForkJoinPool pool) {
+        int[] letters = new int[ciphertext.length()];
+        int n = 0;
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            char ch = ciphertext.charAt(i);
+            if (!Machine.isWhitespace(ch)) {
+                letters[n] = _alphabet.toInt(ch);
+                if (letters[n] == Alphabet.NOT_FOUND) {
+                    throw error("character %c not in alphabet", ch);
+                }
+                n += 1;
+            }
+        }
+        if (n < 2) {
+            throw error("ciphertext too short to score");
+        }
+        _letters = Arrays.copyOf(letters, n);
+        _plugboard = new int[_size];
+        for (int c = 0; c < _size; c += 1) {
+            _plugboard[c] = plugboard == null ? c : plugboard.permute(c);
+        }
+        _best = new PriorityQueue<>();
+        _threshold = Double.NEGATIVE_INFINITY;
+        _tried.reset();
+
+        long start = System.nanoTime();
+        Thread reporter = startReporter(start);
+        try {
+            pool.invoke(new SearchTask(0, keys()));
+        } finally {
+            if (reporter != null) {
+                reporter.interrupt();
+            }
+        }
+        if (_progress != null) {
+            report(start);
+        }
+        ArrayList<Candidate> result = new ArrayList<>(_best);
+        result.sort(Collections.reverseOrder());
+        return result;
+    }
+
+    /** Start and return a daemon thread that reports progress to
+     *  _progress for a search begun at System.nanoTime() START, or return
+     *  null if there is nowhere to report. */
+    private Thread startReporter(long start) {
+        if (_progress == null) {
+            return null;
+        }
+        Thread reporter = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(_interval);
+                    report(start);
+                }
+            } catch (InterruptedException excp) {
+                return;
+            }
+        }, "enigma-key-search-progress");
+        reporter.setDaemon(true);
+        reporter.start();
+        return reporter;
+    }
+
+    /** Print the progress of a search begun at System.nanoTime() START
+     *  on _progress. */
+    private void report(long start) {
+        long tried = keysTried();
+        double seconds = (System.nanoTime() - start) / (double) NANOS;
+        _progress.printf("%d of %d keys (%.1f%%), %.0f keys/s, "
+                         + "best %.5f%n", tried, keys(),
+                         100.0 * tried / keys(), tried / seconds,
+                         bestScore());
+    }
+
+    /** Return the best score so far, or NaN if there is none. */
+    private synchronized double bestScore() {
+        double best = Double.NaN;
+        for (Candidate candidate : _best) {
+            if (Double.isNaN(best) || candidate._score > best) {
+                best = candidate._score;
+            }
+        }
+        return best;
+    }
+
+    /** Consider the key with rotor order ORDER and start positions POSNS
+     *  (not copied), which scored SCORE, for the best few. */
+    private synchronized void offer(int order, int[] posns, double score) {
+        if (_best.size() == _topK) {
+            if (score <= _best.peek()._score) {
+                return;
+            }
+            _best.remove();
+        }
+        Candidate candidate =
+            new Candidate(_orders.get(order), posns, _alphabet, score);
+        _best.add(candidate);
+        if (_best.size() == _topK) {
+            _threshold = _best.peek()._score;
+        }
+        if (_listener != null) {
+            _listener.accept(candidate);
+        }
+    }
+
+    /** Return the index of coincidence of the decryption of _letters with
+     *  rotor order ORDER from start positions POSNS, using COUNTS and
+     *  WORK as scratch, or NaN if it was abandoned as hopeless. */
+    private double score(int order, int[] posns, int[] counts, int[] work) {
+        Rotor[] rotors = _orders.get(order);
+        Stepper stepper = _steppers[order];
+        int fast = rotors.length - 1;
+        int n = _letters.length;
+        int checkpoint = n >= PRUNE_MIN_LETTERS ? n / PRUNE_FRACTION : -1;
+        System.arraycopy(posns, 0, work, 0, posns.length);
+        Arrays.fill(counts, 0);
+        long run = 0;
+        long pairs = 0;
+        for (int t = 0; t < n; t += 1) {
+            if (t == checkpoint && _threshold > 0
+                && pairs < PRUNE_RATIO * _threshold * t * (t - 1)) {
+                return Double.NaN;
+            }
+            if (run == 0) {
+                run = stepper.runLength(work);
+            }
+            if (run == 0) {
+                stepper.step(work);
+            } else {
+                stepper.advanceFast(work, 1);
+                run -= 1;
+            }
+            int c = _plugboard[_letters[t]];
+            for (int i = fast; i >= 0; i -= 1) {
+                c = rotors[i].convertForward(c, work[i]);
+            }
+            for (int i = 1; i <= fast; i += 1) {
+                c = rotors[i].convertBackward(c, work[i]);
+            }
+            c = _plugboard[c];
+            pairs += 2 * counts[c];
+            counts[c] += 1;
+        }
+        return pairs / ((double) n * (n - 1));
+    }
+
+    /** A fork/join task trying keys numbered LO <= K < HI. */
+    private class SearchTask extends RecursiveAction {
+
+        /** A task for keys LO <= K < HI. */
+        SearchTask(long lo, long hi) {
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > LEAF_KEYS) {
+                long mid = (_lo + _hi) >>> 1;
+                invokeAll(new SearchTask(_lo, mid), new SearchTask(mid, _hi));
+                return;
+            }
+            int slots = _orders.isEmpty() ? 0 : _orders.get(0).length;
+            int[] posns = new int[slots];
+            int[] work = new int[slots];
+            int[] counts = new int[_size];
+            for (long key = _lo; key < _hi; key += 1) {
+                int order = (int) (key / _positions);
+                long p = key % _positions;
+                for (int i = slots - 1; i > 0; i -= 1) {
+                    posns[i] = (int) (p % _size);
+                    p /= _size;
+                }
+                double score = score(order, posns, counts, work);
+                if (score > _threshold) {
+                    offer(order, posns, score);
+                }
+            }
+            _tried.add(_hi - _lo);
+        }
+
+        /** Range of keys tried by this task. */
+        private final long _lo, _hi;
+    }
+
+    /** A key found by a search: a rotor order and start positions, with
+     *  the score of the decryption they give.  Candidates are ordered by
+     *  score. */
+    static final class Candidate implements Comparable<Candidate> {
+
+        /** The key putting ROTORS[K] in slot K at setting POSNS[K] of
+         *  ALPHABET, which scored SCORE. */
+        Candidate(Rotor[] rotors, int[] posns, Alphabet alphabet,
+                  double score) {
+            _rotors = new String[rotors.length];
+            for (int i = 0; i < rotors.length; i += 1) {
+                _rotors[i] = rotors[i].name();
+            }
+            StringBuilder setting = new StringBuilder();
+            for (int i = 1; i < posns.length; i += 1) {
+                setting.append(alphabet.toChar(posns[i]));
+            }
+            _setting = setting.toString();
+            _score = score;
+        }
+
+        /** Return the names of my rotors, by slot. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my rotor settings, as for Machine.setRotors. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the index of coincidence of my decryption. */
+        double score() {
+            return _score;
+        }
+
+        /** Return the settings line that sets a machine to me. */
+        String settingsLine() {
+            return "* " + String.join(" ", _rotors) + " " + _setting;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(_score, other._score);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.5f %s", _score, settingsLine());
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+        /** My rotor settings. */
+        private final String _setting;
+        /** My score. */
+        private final double _score;
+    }
+
+    /** Keys tried by one fork/join task without splitting it further. */
+    static final int LEAF_KEYS = 1 << 12;
+
+    /** A candidate is checked for abandonment after 1/PRUNE_FRACTION of
+     *  its letters. */
+    static final int PRUNE_FRACTION = 4;
+
+    /** Messages shorter than this are never abandoned early. */
+    static final int PRUNE_MIN_LETTERS = 200;
+
+    /** A candidate is abandoned if its score at the checkpoint is less
+     *  than this fraction of the worst of the best few. */
+    static final double PRUNE_RATIO = 0.75;
+
+    /** Nanoseconds per second. */
+    private static final long NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Number of candidates kept. */
+    private final int _topK;
+    /** Every rotor order to try, by slot. */
+    private final ArrayList<Rotor[]> _orders;
+    /** Stepping rules of each rotor order. */
+    private final Stepper[] _steppers;
+    /** Number of start positions for each rotor order. */
+    private final long _positions;
+    /** Receives candidates as they enter the best few, or null. */
+    private Consumer<Candidate> _listener;
+    /** Where progress is reported, or null. */
+    private PrintStream _progress;
+    /** Milliseconds between progress reports. */
+    private long _interval;
+    /** Keys tried by the current search. */
+    private final LongAdder _tried = new LongAdder();
+    /** Letters of the ciphertext being searched. */
+    private int[] _letters;
+    /** The known plugboard, as the letter each letter maps to. */
+    private int[] _plugboard;
+    /** The best candidates so far, worst first. */
+    private PriorityQueue<Candidate> _best;
+    /** Score a candidate must beat to join _best, once it is full. */
+    private volatile double _threshold;
+}
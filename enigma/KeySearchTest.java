@@ -0,0 +1,79 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the KeySearch class.
+ *  @author Katrina Sharonin
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTS ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    private static final String PLAINTEXT =
+        "BYTHESHORESOFGITCHEGUMEEBYTHESHININGBIGSEAWATERSTOODTHEWIGWAM"
+        + "OFNOKOMISDAUGHTEROFTHEMOONNOKOMISDARKBEHINDITROSETHEFOREST"
+        + "ROSETHEBLACKANDGLOOMYPINETREESROSETHEFIRSWITHCONESUPONTHEM"
+        + "BRIGHTBEFOREITBEATTHEWATERBEATTHECLEARANDSUNNYWATERBEATTHE"
+        + "SHININGBIGSEAWATERTHERETHEWRINKLEDOLDNOKOMISNURSEDTHELITTLE"
+        + "HIAWATHAROCKEDHIMINHISLINDENCRADLEBEDDEDSOFTINMOSSANDRUSHES";
+
+    /** A machine with three slots and two pawls, two reflectors and three
+     *  moving rotors, so that there are 12 rotor orders. */
+    private Machine machine() {
+        HashMap<String, String> nav = TestUtils.NAVALA;
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(nav.get("B"), AZ)));
+        rotors.add(new Reflector("C", new Permutation(nav.get("C"), AZ)));
+        rotors.add(new MovingRotor("I",
+                new Permutation(nav.get("I"), AZ), "Q"));
+        rotors.add(new MovingRotor("II",
+                new Permutation(nav.get("II"), AZ), "E"));
+        rotors.add(new MovingRotor("III",
+                new Permutation(nav.get("III"), AZ), "V"));
+        return new Machine(AZ, 3, 2, rotors);
+    }
+
+    @Test
+    public void testKeys() {
+        KeySearch search = new KeySearch(machine(), 1);
+        assertEquals(2 * 3 * 2 * 26 * 26, search.keys());
+    }
+
+    @Test
+    public void testFindsKey() {
+        Machine mach = machine();
+        mach.insertRotors(new String[] { "C", "III", "I" });
+        mach.setRotors("KQ");
+        mach.setPlugboard(new Permutation("", AZ));
+        String ciphertext = mach.convert(PLAINTEXT);
+
+        KeySearch search = new KeySearch(mach, 5);
+        ArrayList<KeySearch.Candidate> found = new ArrayList<>();
+        search.setListener(found::add);
+        List<KeySearch.Candidate> best =
+            search.search(ciphertext, null, ForkJoinPool.commonPool());
+        assertEquals(5, best.size());
+        assertEquals("* C III I KQ", best.get(0).settingsLine());
+        assertTrue(best.get(0).score() > best.get(1).score());
+        assertTrue(found.contains(best.get(0)));
+        assertEquals(search.keys(), search.keysTried());
+
+        mach.insertRotors(best.get(0).rotors());
+        mach.setRotors(best.get(0).setting());
+        assertEquals(PLAINTEXT, mach.convert(ciphertext));
+    }
+
+}
@@ -0,0 +1,257 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/** A single-pass tokenizer for configuration files and settings lines.
+ *  Tokens are maximal runs of non-whitespace characters.  The text is
+ *  copied into a buffer that is reused by each reset(), and the current
+ *  token is exposed without copying, so that reading a settings line
+ *  allocates nothing but the strings a caller asks for.  Errors report
+ *  the line and column of the current token.
+ *  @author Katrina Sharonin
+ */
+final class Lexer {
+
+    /** An empty Lexer; use reset() to give it some text. */
+    Lexer() {
+        _buf = new char[INITIAL_SIZE];
+        _view = CharBuffer.wrap(_buf);
+        _forward = new int[0];
+        _used = new boolean[0];
+    }
+
+    /** Start tokenizing TEXT, whose first line is line LINE of its file,
+     *  or 0 if that is not known. */
+    void reset(CharSequence text, int line) {
+        int n = text.length();
+        if (n > _buf.length) {
+            _buf = new char[Math.max(n, 2 * _buf.length)];
+            _view = CharBuffer.wrap(_buf);
+        }
+        for (int i = 0; i < n; i += 1) {
+            _buf[i] = text.charAt(i);
+        }
+        _length = n;
+        _line = line;
+        _start = _end = 0;
+    }
+
+    /** Advance to the next token and return true, or return false if
+     *  there are no more. */
+    boolean next() {
+        int i = _end;
+        while (i < _length && Character.isWhitespace(_buf[i])) {
+            i += 1;
+        }
+        _start = i;
+        while (i < _length && !Character.isWhitespace(_buf[i])) {
+            i += 1;
+        }
+        _end = i;
+        return _start < _end;
+    }
+
+    /** Return the length of the current token. */
+    int length() {
+        return _end - _start;
+    }
+
+    /** Return character K of the current token. */
+    char charAt(int k) {
+        return _buf[_start + k];
+    }
+
+    /** Return the current token.  The result is only valid until my next
+     *  call to next() or reset(). */
+    CharSequence token() {
+        _view.limit(_end).position(_start);
+        return _view;
+    }
+
+    /** Return a copy of the current token. */
+    String string() {
+        return new String(_buf, _start, _end - _start);
+    }
+
+    /** Return a copy of my text from offset START to offset END. */
+    String string(int start, int end) {
+        return new String(_buf, start, end - start);
+    }
+
+    /** Return the offset in my text of the start of the current token. */
+    int start() {
+        return _start;
+    }
+
+    /** Return the offset in my text just past the current token. */
+    int end() {
+        return _end;
+    }
+
+    /** Return true iff the current token is a decimal integer, with an
+     *  optional sign, that fits in an int. */
+    boolean isInt() {
+        int i = _start;
+        if (i < _end && (_buf[i] == '+' || _buf[i] == '-')) {
+            i += 1;
+        }
+        if (i == _end) {
+            return false;
+        }
+        long value = 0;
+        for (; i < _end; i += 1) {
+            int digit = Character.digit(_buf[i], DECIMAL);
+            if (digit < 0) {
+                return false;
+            }
+            value = value * DECIMAL + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                return false;
+            }
+        }
+        return _buf[_start] == '-' || value <= Integer.MAX_VALUE;
+    }
+
+    /** Return the value of the current token, which must satisfy
+     *  isInt(). */
+    int intValue() {
+        int i = _start;
+        boolean negative = _buf[i] == '-';
+        if (negative || _buf[i] == '+') {
+            i += 1;
+        }
+        long value = 0;
+        for (; i < _end; i += 1) {
+            value = value * DECIMAL + Character.digit(_buf[i], DECIMAL);
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    /** Start a new permutation of ALPHA, initially the identity, to be
+     *  filled in by addCycles(). */
+    void startCycles(Alphabet alpha) {
+        int size = alpha.size();
+        if (_forward.length != size) {
+            _forward = new int[size];
+            _used = new boolean[size];
+        }
+        for (int i = 0; i < size; i += 1) {
+            _forward[i] = i;
+        }
+        Arrays.fill(_used, false);
+        _cycleAlphabet = alpha;
+    }
+
+    /** Add the cycles in the current token to the permutation begun by
+     *  startCycles(), and return true.  If the token is not of the form
+     *  (c...)(c...)... leave the permutation in an unspecified state and
+     *  return false.  A character that is not in the alphabet or appears
+     *  twice, or a cycle longer than MAXCYCLE characters, is an error. */
+    boolean addCycles(int maxCycle) {
+        int i = _start;
+        while (i < _end) {
+            if (_buf[i] != '(') {
+                return false;
+            }
+            int first = i + 1;
+            int j = first;
+            while (j < _end && _buf[j] != ')') {
+                if (_buf[j] == '(') {
+                    return false;
+                }
+                j += 1;
+            }
+            if (j == _end || j == first) {
+                return false;
+            }
+            if (j - first > maxCycle) {
+                throw error(first, "cycles may have at most %d characters",
+                            maxCycle);
+            }
+            int head = cycleIndex(first);
+            int prev = head;
+            for (int k = first + 1; k < j; k += 1) {
+                int c = cycleIndex(k);
+                _forward[prev] = c;
+                prev = c;
+            }
+            _forward[prev] = head;
+            i = j + 1;
+        }
+        return true;
+    }
+
+    /** Return the index of the character at offset K of my text, marking
+     *  it as used in the current permutation. */
+    private int cycleIndex(int k) {
+        int c = _cycleAlphabet.toInt(_buf[k]);
+        if (c == Alphabet.NOT_FOUND) {
+            throw error(k, "character %c not in alphabet", _buf[k]);
+        }
+        if (_used[c]) {
+            throw error(k, "character %c appears twice", _buf[k]);
+        }
+        _used[c] = true;
+        return c;
+    }
+
+    /** Return the permutation built by startCycles() and addCycles(),
+     *  as the index each index of the alphabet maps to.  It is reused by
+     *  the next startCycles(). */
+    int[] cycles() {
+        return _forward;
+    }
+
+    /** Return an EnigmaException for the current token, with message
+     *  composed from MSGFORMAT and ARGS as for String.format, preceded by
+     *  the token's position. */
+    EnigmaException error(String msgFormat, Object... args) {
+        return error(_start, msgFormat, args);
+    }
+
+    /** Return an EnigmaException at offset POSN of my text, with message
+     *  composed from MSGFORMAT and ARGS as for String.format, preceded by
+     *  that position. */
+    private EnigmaException error(int posn, String msgFormat,
+                                  Object... args) {
+        int line = _line;
+        int lineStart = 0;
+        for (int i = 0; i < posn; i += 1) {
+            if (_buf[i] == '\n') {
+                line += 1;
+                lineStart = i + 1;
+            }
+        }
+        String msg = String.format(msgFormat, args);
+        if (_line == 0) {
+            return EnigmaException.error("column %d: %s",
+                                         posn - lineStart + 1, msg);
+        }
+        return EnigmaException.error("line %d, column %d: %s", line,
+                                     posn - lineStart + 1, msg);
+    }
+
+    /** Initial size of my buffer. */
+    private static final int INITIAL_SIZE = 256;
+
+    /** Radix of integers. */
+    private static final int DECIMAL = 10;
+
+    /** Holds my text in its first _length characters. */
+    private char[] _buf;
+    /** A view of _buf used to expose the current token. */
+    private CharBuffer _view;
+    /** Length of my text. */
+    private int _length;
+    /** Line number of the first line of my text, or 0 if unknown. */
+    private int _line;
+    /** Offsets of the start and end of the current token. */
+    private int _start, _end;
+    /** The permutation being built by addCycles(). */
+    private int[] _forward;
+    /** Which characters already appear in that permutation. */
+    private boolean[] _used;
+    /** Alphabet of that permutation. */
+    private Alphabet _cycleAlphabet;
+}
@@ -0,0 +1,84 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Lexer class.
+ *  @author Katrina Sharonin
+ */
+public class LexerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    @Test
+    public void testTokens() {
+        Lexer lexer = new Lexer();
+        lexer.reset("  * B\tBeta\n 5 -3 x12 ", 1);
+        assertTrue(lexer.next());
+        assertEquals("*", lexer.string());
+        assertTrue(lexer.next());
+        assertEquals("B", lexer.token().toString());
+        assertTrue(lexer.next());
+        assertEquals(4, lexer.length());
+        assertEquals('e', lexer.charAt(1));
+        assertTrue(lexer.next());
+        assertTrue(lexer.isInt());
+        assertEquals(5, lexer.intValue());
+        assertTrue(lexer.next());
+        assertEquals(-3, lexer.intValue());
+        assertTrue(lexer.next());
+        assertFalse(lexer.isInt());
+        assertFalse(lexer.next());
+        assertFalse(lexer.next());
+
+        lexer.reset("AB", 0);
+        assertTrue(lexer.next());
+        assertEquals("AB", lexer.string());
+        assertFalse(lexer.next());
+    }
+
+    @Test
+    public void testCycles() {
+        Lexer lexer = new Lexer();
+        lexer.reset("(AB)(CDE) (Z)", 0);
+        lexer.startCycles(AZ);
+        assertTrue(lexer.next());
+        assertTrue(lexer.addCycles(AZ.size()));
+        assertTrue(lexer.next());
+        assertTrue(lexer.addCycles(AZ.size()));
+        Permutation perm = new Permutation("(AB)(CDE)", AZ);
+        assertTrue(perm.sameMapping(lexer.cycles()));
+
+        lexer.reset("(AB)X(CD)", 0);
+        lexer.startCycles(AZ);
+        assertTrue(lexer.next());
+        assertFalse(lexer.addCycles(2));
+    }
+
+    @Test
+    public void testErrorPosition() {
+        Lexer lexer = new Lexer();
+        lexer.reset("AB\n  (AB) (CA)", 3);
+        lexer.startCycles(AZ);
+        lexer.next();
+        lexer.next();
+        lexer.addCycles(2);
+        lexer.next();
+        try {
+            lexer.addCycles(2);
+            fail("duplicate character accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("line 4, column 10: character A appears twice",
+                         excp.getMessage());
+        }
+    }
+
+}
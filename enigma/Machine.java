@@ -1,7 +1,16 @@
 package enigma;
 
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static enigma.EnigmaException.*;
 
@@ -25,8 +34,39 @@ class Machine {
         _allRotors = takeInAllRotors;
 
         _rotorslots = new ArrayList<>();
+        _posns = new int[0];
+        _origin = _posns;
+
+    }
+
+    /** Return a new machine with my alphabet, numbers of slots and pawls,
+     *  and available rotors, that can be used independently of (and
+     *  concurrently with) me.  Rotors are immutable definitions, so the
+     *  two machines share them; the new one's only state of its own is
+     *  its rotor settings and its cache, which starts empty.  No rotors
+     *  are inserted and no plugboard is set. */
+    Machine copy() {
+        return new Machine(this);
+    }
 
+    /** A machine like ORIGINAL, as described for copy(), sharing its list
+     *  of available rotors. */
+    private Machine(Machine original) {
+        _alphabet = original._alphabet;
+        _numRotors = original._numRotors;
+        _pawls = original._pawls;
+        _allRotors = original._allRotors;
+        _rotorslots = new ArrayList<>();
+        _posns = new int[0];
+        _origin = _posns;
+        _cacheCapacity = original._cacheCapacity;
+        _tracer = original._tracer;
+    }
 
+    /** Return all the rotors available to me, in the order given to my
+     *  constructor. */
+    List<Rotor> availableRotors() {
+        return Collections.unmodifiableList(_allRotors);
     }
 
     /** Return the number of rotor slots I have. */
@@ -53,24 +93,51 @@ class Machine {
         return _rotorslots.get(k);
     }
 
+    /** Return true iff rotors have been inserted in my slots. */
+    boolean hasRotors() {
+        return !_rotorslots.isEmpty();
+    }
+
     Alphabet alphabet() {
         return _alphabet;
     }
 
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting.  If ROTORS is
+     *  rejected, I am left unchanged. */
     void insertRotors(String[] rotors) {
+        int[] posns = _posns.clone();
+        ArrayList<Rotor> slots = lineup(rotors, posns);
+        if (posns.length != slots.size()) {
+            posns = new int[slots.size()];
+        }
+        boolean changed = !slots.equals(_rotorslots);
+        _rotorslots = slots;
+        _posns = posns;
+        if (changed) {
+            clearCache();
+            _stepper = null;
+        }
+        _run = 0;
+        _origin = settings();
+        _position = 0;
+    }
+
+    /** Return the rotors that insertRotors(ROTORS) puts in my slots,
+     *  checking them but changing nothing, and set to 0 the entries of
+     *  POSNS, a copy of my settings, for the slots it refills. */
+    private ArrayList<Rotor> lineup(String[] rotors, int[] posns) {
+        ArrayList<Rotor> slots = new ArrayList<>(_rotorslots);
         try {
-            if (_rotorslots.size() == 0) {
+            if (slots.size() == 0) {
                 for (int i = 0; i < rotors.length; i++) {
                     String currname = rotors[i];
                     for (int j = 0; j < _allRotors.size(); j++) {
                         String nameofrotorfromcollec = _allRotors.get(j).name();
                         if (nameofrotorfromcollec.equals(currname)) {
-                            _allRotors.get(j).set(0);
                             Rotor needed = _allRotors.get(j);
-                            _rotorslots.add(needed);
+                            slots.add(needed);
 
                         }
                     }
@@ -81,19 +148,25 @@ class Machine {
                     for (int j = 0; j < _allRotors.size(); j++) {
                         String nameofrotorfromc = _allRotors.get(j).name();
                         if (nameofrotorfromc.equals(currnamee)) {
-                            _allRotors.get(j).set(0);
-                            _rotorslots.set(i, _allRotors.get(j));
+                            slots.set(i, _allRotors.get(j));
+                            posns[i] = 0;
 
                         }
                     }
                 }
             }
 
+            for (int i = 0; i < slots.size(); i += 1) {
+                if (slots.indexOf(slots.get(i)) != i) {
+                    throw error("rotor %s repeated", slots.get(i).name());
+                }
+            }
+
             int pawls = numPawls();
             int counter = 0;
 
-            for (int i = 0; i < _rotorslots.size(); i++) {
-                Rotor curr = _rotorslots.get(i);
+            for (int i = 0; i < slots.size(); i++) {
+                Rotor curr = slots.get(i);
 
                 if (curr.rotates()) {
                     counter += 1;
@@ -104,41 +177,113 @@ class Machine {
                 throw new EnigmaException("wrong num of pawls vs rotors");
             }
 
-            Rotor checkifreflector = _rotorslots.get(0);
+            Rotor checkifreflector = slots.get(0);
             if (!checkifreflector.reflecting()) {
                 throw new EnigmaException("insertRotors: R missing at in 0");
             }
-
         } catch (IndexOutOfBoundsException excp) {
             throw error("insert Rotors: invalid setting");
         }
+        return slots;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
-     *  to the leftmost rotor setting (not counting the reflector).  */
-    void setRotors(String setting) {
+     *  to the leftmost rotor setting (not counting the reflector).  If
+     *  SETTING is rejected, I am left unchanged. */
+    void setRotors(CharSequence setting) {
+        _posns = parseSetting(setting, _rotorslots.size());
+        _run = 0;
+        _origin = settings();
+        _position = 0;
+    }
+
+    /** Return the settings, indexed by slot, of SLOTS rotors set
+     *  according to SETTING as for setRotors. */
+    private int[] parseSetting(CharSequence setting, int slots) {
 
         if (setting.length() != this.numRotors() - 1) {
             throw new EnigmaException("setRotors: length wrong");
         }
 
+        int[] posns = new int[slots];
+        for (int i = 1; i < slots && i <= setting.length(); i++) {
+            int posn = _alphabet.toInt(setting.charAt(i - 1));
+            if (posn == Alphabet.NOT_FOUND) {
+                throw new EnigmaException("char not found");
+            }
+            posns[i] = posn;
+        }
+        return posns;
+    }
 
-        int processingsettingstring = 0;
+    /** Return my current rotors, their settings and my plugboard as
+     *  CompiledSettings, which may be applied to me or to any copy of
+     *  me. */
+    CompiledSettings compile() {
+        return new CompiledSettings(indices(_rotorslots), settings(),
+                                    _plugboard);
+    }
 
-        try {
-            for (int i = 1; i < _rotorslots.size(); i++) {
-                if (processingsettingstring >= setting.length()) {
-                    break;
-                }
+    /** Return as CompiledSettings the rotors, settings and plugboard that
+     *  insertRotors(ROTORS), setRotors(SETTING) and
+     *  setPlugboard(PLUGBOARD) would give me, making all of their checks
+     *  but changing nothing.  Applying the result sets me up as those
+     *  calls would, except that nothing is changed if any check fails. */
+    CompiledSettings compile(String[] rotors, CharSequence setting,
+                             Permutation plugboard) {
+        ArrayList<Rotor> slots = lineup(rotors, _posns.clone());
+        int[] posns = parseSetting(setting, slots.size());
+        checkPlugboard(plugboard);
+        return new CompiledSettings(indices(slots), posns, plugboard);
+    }
 
-                Rotor curr = _rotorslots.get(i);
-                curr.set(setting.charAt(processingsettingstring));
-                processingsettingstring += 1;
+    /** Return the index among my available rotors of each of ROTORS. */
+    private int[] indices(List<Rotor> rotors) {
+        int[] result = new int[rotors.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = _allRotors.indexOf(rotors.get(i));
+        }
+        return result;
+    }
+
+    /** Set my rotors, their settings and my plugboard to SETTINGS, as
+     *  returned by compile() for me or a machine I am a copy of.  This is
+     *  the same as the insertRotors, setRotors and setPlugboard calls
+     *  that produced SETTINGS, without their parsing, lookup and
+     *  checking. */
+    void apply(CompiledSettings settings) {
+        int n = settings.numRotors();
+        if (_rotorslots.size() != n) {
+            _rotorslots = new ArrayList<>(n);
+            for (int i = 0; i < n; i += 1) {
+                _rotorslots.add(null);
+            }
+            _posns = new int[n];
+        }
+        boolean changed = false;
+        for (int i = 0; i < n; i += 1) {
+            Rotor rotor = _allRotors.get(settings.rotor(i));
+            if (_rotorslots.get(i) != rotor) {
+                _rotorslots.set(i, rotor);
+                changed = true;
             }
-        } catch (IndexOutOfBoundsException excp) {
-            throw error("setRotors: invalid setting");
         }
+        if (changed) {
+            clearCache();
+            _stepper = null;
+        }
+        setSettings(settings.settings());
+        Permutation plugboard = settings.plugboard();
+        if (_plugboard != plugboard) {
+            if (_plugboard == null || !_plugboard.sameMapping(plugboard)) {
+                clearCache();
+                EnigmaMetrics.get().plugboardRebuilt();
+            }
+            _plugboard = plugboard;
+        }
+        _origin = settings.settings();
+        _position = 0;
     }
 
     /** Return the current plugboard's permutation. */
@@ -148,6 +293,17 @@ class Machine {
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
+        checkPlugboard(plugboard);
+
+        if (_plugboard == null || !_plugboard.sameMapping(plugboard)) {
+            clearCache();
+            EnigmaMetrics.get().plugboardRebuilt();
+        }
+        _plugboard = plugboard;
+    }
+
+    /** Check that PLUGBOARD only swaps letters in pairs. */
+    private static void checkPlugboard(Permutation plugboard) {
         ArrayList sub = plugboard.arrcycles();
         for (int i = 0; i < sub.size(); i++) {
             ArrayList look = (ArrayList) sub.get(i);
@@ -156,8 +312,6 @@ class Machine {
             }
 
         }
-
-        _plugboard = plugboard;
     }
 
     /** Returns the result of converting the input character C (as an
@@ -165,47 +319,450 @@ class Machine {
      *  the machine. */
     int convert(int c) {
         advanceRotors();
-        if (Main.verbose()) {
-            System.err.printf("[");
-            int num = numRotors();
-            for (int r = 1; r < num; r += 1) {
-                System.err.printf("%c",
-                        alphabet().toChar(getRotor(r).setting()));
+        _position += 1;
+        _converted += 1;
+        if (_tracer != null) {
+            int plugged = plugboard().permute(c);
+            int result = plugboard().permute(applyRotors(plugged));
+            _tracer.trace(this, c, plugged, result);
+            return result;
+        }
+        int base = composedBase();
+        if (base >= 0) {
+            int result = _composed[base + c];
+            if (result == UNCOMPOSED) {
+                _cacheMisses += 1;
+                result = plugboard().permute(
+                        applyRotors(plugboard().permute(c)));
+                _composed[base + c] = result;
+            } else {
+                _cacheHits += 1;
             }
-            System.err.printf("] %c -> ", alphabet().toChar(c));
+            return result;
+        }
+        return plugboard().permute(applyRotors(plugboard().permute(c)));
+    }
+
+    /** Send a trace of each letter I convert to TRACER from now on, or
+     *  stop tracing if TRACER is null.  Tracing bypasses the composed
+     *  cache. */
+    void setTracer(Tracer tracer) {
+        _tracer = tracer;
+    }
+
+    /** Return my Tracer, or null if I am not tracing. */
+    Tracer tracer() {
+        return _tracer;
+    }
+
+    /** Return the index in _composed of the composed permutation of the
+     *  whole machine (plugboard, rotors, reflector and back) for the
+     *  current rotor settings, claiming its slot if another state holds
+     *  it.  Entries not yet computed are UNCOMPOSED.  Returns -1 if the
+     *  cache is disabled or my rotor settings cannot be packed into a
+     *  key.  Settings are packed in base alphabet-size with the fast
+     *  rotor last, so successive states fall in successive slots. */
+    private int composedBase() {
+        if (_cacheCapacity == 0 || !_keyable) {
+            return -1;
         }
-        c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(c));
+        int size = _alphabet.size();
+        long key = 0;
+        for (int i = 1; i < _rotorslots.size(); i += 1) {
+            key = key * size + _posns[i];
         }
-        c = applyRotors(c);
-        c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c%n", alphabet().toChar(c));
+        if (_cacheKeys == null) {
+            int slots = Integer.highestOneBit(_cacheCapacity);
+            _cacheKeys = new long[slots];
+            Arrays.fill(_cacheKeys, EMPTY);
+            _composed = new int[slots * size];
         }
-        return c;
+        int slot = (int) key & (_cacheKeys.length - 1);
+        int base = slot * size;
+        if (_cacheKeys[slot] != key) {
+            if (_cacheKeys[slot] == EMPTY) {
+                _cached += 1;
+            } else {
+                _cacheEvictions += 1;
+            }
+            _cacheKeys[slot] = key;
+            Arrays.fill(_composed, base, base + size, UNCOMPOSED);
+        }
+        return base;
+    }
+
+    /** Discard all composed permutations, as after a change of rotors or
+     *  plugboard.  A change of rotor settings alone (setRotors) needs no
+     *  flush, since the settings are part of each key. */
+    private void clearCache() {
+        if (_cached > 0) {
+            _cacheEvictions += _cached;
+            _cached = 0;
+            Arrays.fill(_cacheKeys, EMPTY);
+        }
+        long states = 1;
+        _keyable = true;
+        for (int i = 1; i < _rotorslots.size() && _keyable; i += 1) {
+            if (states > Long.MAX_VALUE / _alphabet.size()) {
+                _keyable = false;
+            }
+            states *= _alphabet.size();
+        }
+    }
+
+    /** Keep the composed permutations of at most CAPACITY rotor states,
+     *  in a table of the largest power of two <= CAPACITY slots, of
+     *  alphabet-size ints each, allocated when first needed.  0 (the
+     *  default) disables the cache.  The cache pays only when states
+     *  recur: a message longer than the period of the rotors, or the
+     *  same settings used again; otherwise each letter is a miss and
+     *  costs a little more than converting without it.  Any cached
+     *  states are discarded. */
+    void setCacheCapacity(int capacity) {
+        if (capacity < 0) {
+            throw error("cache capacity must be >= 0");
+        }
+        if ((long) Integer.highestOneBit(capacity) * _alphabet.size()
+            > Integer.MAX_VALUE) {
+            throw error("cache capacity too large");
+        }
+        _cacheEvictions += _cached;
+        _cached = 0;
+        _cacheKeys = null;
+        _composed = null;
+        _cacheCapacity = capacity;
+    }
+
+    /** Return the maximum number of cached rotor states. */
+    int cacheCapacity() {
+        return _cacheCapacity;
     }
 
-    /** Advance all rotors to their next position. */
+    /** Return the number of conversions answered from the cache. */
+    long cacheHits() {
+        return _cacheHits;
+    }
+
+    /** Return the number of conversions that had to go through the
+     *  plugboard and rotors. */
+    long cacheMisses() {
+        return _cacheMisses;
+    }
+
+    /** Return the number of rotor states dropped from the cache, either
+     *  because another state took their slot or by invalidation. */
+    long cacheEvictions() {
+        return _cacheEvictions;
+    }
+
+    /** Advance all rotors to their next position.  Between carries only
+     *  the fast rotor moves, so once the stepper has said how long such a
+     *  run lasts, its letters cost one addition each. */
     private void advanceRotors() {
-        boolean[] advancebnarralst = new boolean[_rotorslots.size()];
-        advancebnarralst[_rotorslots.size() - 1] = true;
+        if (_run == 0) {
+            Stepper stepper = stepper();
+            long run = stepper.runLength(_posns);
+            if (run == 0) {
+                _doubleSteps += stepper.doubleSteps(_posns);
+                _steps += stepper.step(_posns);
+                return;
+            }
+            _run = run;
+        }
+        int fast = _posns.length - 1;
+        _posns[fast] = _posns[fast] + 1 == _alphabet.size()
+            ? 0 : _posns[fast] + 1;
+        _run -= 1;
+        _steps += 1;
+    }
+
+    /** Return the stepping rules of my current rotors, computing them if
+     *  my rotors have changed. */
+    private Stepper stepper() {
+        if (_stepper == null) {
+            _stepper = new Stepper(_rotorslots, _alphabet.size());
+        }
+        return _stepper;
+    }
+
+    /** Return the number of letters after which the settings of my rotors
+     *  repeat, once stepping from their current settings has reached a
+     *  cycle.  Takes time proportional to the number of letters in a
+     *  period that move a rotor other than the fast one. */
+    long period() {
+        return stepper().period(_posns);
+    }
+
+    /** Return the settings of my rotors, indexed by slot.  Entry 0, the
+     *  reflector's, is always 0. */
+    int[] settings() {
+        return _posns.clone();
+    }
+
+    /** Return the setting of the rotor in slot K. */
+    int setting(int k) {
+        return _posns[k];
+    }
+
+    /** Set my rotors to the settings POSNS, as returned by settings(). */
+    private void setSettings(int[] posns) {
+        System.arraycopy(posns, 1, _posns, 1, posns.length - 1);
+        _run = 0;
+    }
+
+    /** Advance my rotors as if N more characters had been converted,
+     *  without converting them.  Takes time proportional to the number
+     *  of times a rotor other than the fast one moves, rather than to N. */
+    void jump(long n) {
+        int[] posns = settings();
+        jump(posns, n);
+        setSettings(posns);
+        _position += n;
+    }
 
+    /** Return the number of characters converted (or jumped over) since
+     *  my rotors were last set by insertRotors, setRotors or restore. */
+    long position() {
+        return _position;
+    }
+
+    /** Return an immutable snapshot of my rotors, their settings and my
+     *  plugboard. */
+    MachineState snapshot() {
+        return new MachineState(_rotorslots.toArray(new Rotor[0]),
+                                _origin.clone(), _position, settings(),
+                                _plugboard);
+    }
+
+    /** Return me to STATE, as returned by snapshot() on me or on another
+     *  machine with the same alphabet and number of rotors.  If STATE has
+     *  no plugboard, I am given the identity plugboard. */
+    void restore(MachineState state) {
+        if (state.numRotors() == 0) {
+            throw error("restore: state has no rotors inserted");
+        }
+        if (state.numRotors() != numRotors()
+            || state.rotor(0).alphabet() != _alphabet) {
+            throw error("restore: state is for a different machine");
+        }
+        boolean sameRotors = _rotorslots.size() == state.numRotors();
+        for (int i = 0; i < state.numRotors() && sameRotors; i += 1) {
+            sameRotors = _rotorslots.get(i) == state.rotor(i);
+        }
+        if (!sameRotors) {
+            _rotorslots = new ArrayList<>(Arrays.asList(state.rotors()));
+            _posns = new int[_rotorslots.size()];
+            clearCache();
+            _stepper = null;
+        }
+        setSettings(state.settings());
+        _origin = state.origin();
+        _position = state.position();
+        if (state.plugboard() != null) {
+            setPlugboard(state.plugboard());
+        } else {
+            setPlugboard(new Permutation("", _alphabet));
+        }
+    }
+
+    /** Set my rotors to where they would be after converting POSITION
+     *  characters from the settings at which they were last set (by
+     *  insertRotors, setRotors or restore), so that the next character
+     *  converted is character #POSITION of the message.  Takes time
+     *  proportional to the number of carries between my current position
+     *  and POSITION (or between the start and POSITION, for a backwards
+     *  seek), not to POSITION itself. */
+    void seek(long position) {
+        if (position < 0) {
+            throw error("seek: negative position");
+        }
+        int[] posns;
+        long n;
+        if (position >= _position) {
+            posns = settings();
+            n = position - _position;
+        } else {
+            posns = _origin.clone();
+            n = position;
+        }
+        jump(posns, n);
+        setSettings(posns);
+        _position = position;
+    }
+
+    /** Advance the rotor settings POSNS (indexed as for settings()) by N
+     *  characters, following the same stepping rules as advanceRotors,
+     *  without touching my rotors. */
+    private void jump(int[] posns, long n) {
+        if (posns.length == 0) {
+            throw error("no rotors inserted");
+        }
+        stepper().jump(posns, n);
+    }
+
+    /** Return the conversion of C (an index into my alphabet) with my rotors
+     *  at settings POSNS, without touching my rotors. */
+    private int convertAt(int[] posns, int c) {
+        c = _plugboard.permute(c);
+        for (int i = posns.length - 1; i >= 0; i -= 1) {
+            c = _rotorslots.get(i).convertForward(c, posns[i]);
+        }
+        for (int i = 1; i < posns.length; i += 1) {
+            c = _rotorslots.get(i).convertBackward(c, posns[i]);
+        }
+        return _plugboard.permute(c);
+    }
+
+    /** Like convert(String), but converts pieces of MSG concurrently on
+     *  the common fork/join pool. */
+    String convertParallel(String msg) {
+        char[] result = new char[msg.length()];
+        int n = convertParallel(msg.toCharArray(), 0, msg.length(),
+                                result, 0, ForkJoinPool.commonPool());
+        return new String(result, 0, n);
+    }
 
-        for (int i = _rotorslots.size() - 1; i > 0; i--) {
-            if (_rotorslots.get(i).atNotch()
-                    && _rotorslots.get(i - 1).rotates()) {
-                advancebnarralst[i] = true;
-                advancebnarralst[i - 1] = true;
+    /** Like convert(SRC, OFF, LEN, DST, DSTOFF), but splits the message
+     *  into chunks of PARALLEL_CHUNK characters that are converted
+     *  concurrently on POOL, each starting from the rotor settings that
+     *  jump() computes for its first letter.  The result and my final
+     *  settings are the same as for the sequential version.  DST must not
+     *  overlap SRC.  If a character is not in my alphabet, my settings are
+     *  left unchanged.  The chunks bypass my composed cache.  If I have a
+     *  Tracer, the message is instead converted by convert(SRC, ...),
+     *  so that each letter is traced, in order. */
+    int convertParallel(char[] src, int off, int len, char[] dst, int dstOff,
+                        ForkJoinPool pool) {
+        if (_tracer != null) {
+            return convert(src, off, len, dst, dstOff);
+        }
+        int chunks = (len + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+        int[] before = new int[chunks + 1];
+        Stepper stepper = stepper();
+        pool.invoke(new ChunkTask(src, off, len, before, 0, chunks));
+        for (int i = 0; i < chunks; i += 1) {
+            before[i + 1] += before[i];
+        }
+        int[] start = settings();
+        pool.invoke(new ChunkTask(src, off, len, dst, dstOff, before,
+                                  start, stepper, 0, chunks));
+        jump(start, before[chunks]);
+        setSettings(start);
+        _position += before[chunks];
+        _converted += before[chunks];
+        publishMetrics();
+        return before[chunks];
+    }
+
+    /** A fork/join task over the chunks of a message being converted by
+     *  convertParallel.  It either counts the letters in each chunk, or
+     *  converts each chunk from its jump-ahead rotor settings. */
+    private class ChunkTask extends RecursiveAction {
+
+        /** A task storing the number of letters of chunk K of the LEN
+         *  characters of SRC from OFF in LETTERS[K + 1], for
+         *  LO <= K < HI. */
+        ChunkTask(char[] src, int off, int len, int[] letters,
+                  int lo, int hi) {
+            this(src, off, len, null, 0, letters, null, null, lo, hi);
+        }
+
+        /** A task converting chunks LO <= K < HI of the LEN characters of
+         *  SRC from OFF into DST, where BEFORE[K] letters precede chunk K,
+         *  whose output starts at DST[DSTOFF + BEFORE[K]].  START gives the
+         *  rotor settings before the first letter, and STEPPER my stepping
+         *  rules. */
+        ChunkTask(char[] src, int off, int len, char[] dst, int dstOff,
+                  int[] before, int[] start, Stepper stepper,
+                  int lo, int hi) {
+            _src = src;
+            _off = off;
+            _len = len;
+            _dst = dst;
+            _dstOff = dstOff;
+            _before = before;
+            _start = start;
+            _stepper = stepper;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > 1) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new ChunkTask(_src, _off, _len, _dst, _dstOff,
+                                        _before, _start, _stepper,
+                                        _lo, mid),
+                          new ChunkTask(_src, _off, _len, _dst, _dstOff,
+                                        _before, _start, _stepper,
+                                        mid, _hi));
+            } else if (_hi > _lo) {
+                int from = _off + _lo * PARALLEL_CHUNK;
+                int to = Math.min(_off + _len, from + PARALLEL_CHUNK);
+                if (_dst == null) {
+                    count(from, to);
+                } else {
+                    convertChunk(from, to);
+                }
+            }
+        }
+
+        /** Record the number of letters in _SRC[FROM .. TO-1]. */
+        private void count(int from, int to) {
+            int n = 0;
+            for (int i = from; i < to; i += 1) {
+                if (!isWhitespace(_src[i])) {
+                    n += 1;
+                }
             }
+            _before[_lo + 1] = n;
         }
 
-        for (int k = 1; k < _rotorslots.size(); k++) {
-            if (advancebnarralst[k]) {
-                _rotorslots.get(k).advance();
+        /** Convert the letters of _SRC[FROM .. TO-1]. */
+        private void convertChunk(int from, int to) {
+            int[] posns = _start.clone();
+            _stepper.jump(posns, _before[_lo]);
+            int k = _dstOff + _before[_lo];
+            long run = 0;
+            for (int i = from; i < to; i += 1) {
+                char ch = _src[i];
+                if (!isWhitespace(ch)) {
+                    int index = _alphabet.toInt(ch);
+                    if (index == Alphabet.NOT_FOUND) {
+                        throw error("character %c not in alphabet", ch);
+                    }
+                    if (run == 0) {
+                        run = _stepper.runLength(posns);
+                    }
+                    if (run == 0) {
+                        _stepper.step(posns);
+                    } else {
+                        _stepper.advanceFast(posns, 1);
+                        run -= 1;
+                    }
+                    _dst[k] = _alphabet.toChar(convertAt(posns, index));
+                    k += 1;
+                }
             }
         }
 
+        /** Message being converted. */
+        private final char[] _src;
+        /** Start and length of the message in _src. */
+        private final int _off, _len;
+        /** Destination of the conversion, or null when counting. */
+        private final char[] _dst;
+        /** Start of the output in _dst. */
+        private final int _dstOff;
+        /** Letters before (or, when counting, in) each chunk. */
+        private final int[] _before;
+        /** Rotor settings before the first letter of the message. */
+        private final int[] _start;
+        /** Stepping rules of my rotors, or null when counting. */
+        private final Stepper _stepper;
+        /** Range of chunks handled by this task. */
+        private final int _lo, _hi;
     }
 
     /** Return the result of applying the rotors to the character C (as an
@@ -215,13 +772,13 @@ class Machine {
 
         for (int i = _rotorslots.size() - 1; i >= 0; i -= 1) {
             Rotor curr = _rotorslots.get(i);
-            c = curr.convertForward(c);
+            c = curr.convertForward(c, _posns[i]);
         }
 
 
         for (int i = 1; i < _rotorslots.size(); i++) {
             Rotor curry = _rotorslots.get(i);
-            c = curry.convertBackward(c);
+            c = curry.convertBackward(c, _posns[i]);
 
         }
 
@@ -231,23 +788,137 @@ class Machine {
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
+        StringBuilder result = new StringBuilder(msg.length());
+        convert(msg, result);
+        return result.toString();
+    }
+
+    /** Convert the LEN characters of SRC starting at OFF, skipping
+     *  whitespace, storing the results in DST starting at DSTOFF and
+     *  updating the state of the rotors accordingly.  Returns the number
+     *  of characters stored.  DST may be SRC, provided DSTOFF <= OFF. */
+    int convert(char[] src, int off, int len, char[] dst, int dstOff) {
+        int k = dstOff;
+        for (int i = off; i < off + len; i += 1) {
+            char ch = src[i];
+            if (!isWhitespace(ch)) {
+                dst[k] = convertChar(ch);
+                k += 1;
+            }
+        }
+        publishMetrics();
+        return k - dstOff;
+    }
 
-        if (msg.equals("")) {
-            return "";
+    /** Return true iff every character of my alphabet fits in one byte,
+     *  so that convert(byte[], ...) may be used. */
+    boolean isSingleByte() {
+        return _alphabet.maxChar() <= MAX_BYTE;
+    }
+
+    /** Like convert(char[], ...), but for messages held as bytes, each
+     *  byte B being the character (char) (B & 0xFF), which isSingleByte()
+     *  must allow.  Letters are looked up in 256-entry tables rather than
+     *  in my alphabet. */
+    int convert(byte[] src, int off, int len, byte[] dst, int dstOff) {
+        return convert(ByteBuffer.wrap(src), off, len, dst, dstOff);
+    }
+
+    /** Like convert(byte[], ...), but converting the LEN bytes of SRC
+     *  starting at index OFF, which may be a direct or mapped buffer.
+     *  SRC's position is not used or changed. */
+    int convert(ByteBuffer src, int off, int len, byte[] dst, int dstOff) {
+        if (_byteIndex == null) {
+            buildByteTables();
+        }
+        int[] byteIndex = _byteIndex;
+        byte[] letterBytes = _letterBytes;
+        int k = dstOff;
+        try {
+            for (int i = off; i < off + len; i += 1) {
+                int index = byteIndex[src.get(i) & MAX_BYTE];
+                if (index >= 0) {
+                    dst[k] = letterBytes[convert(index)];
+                    k += 1;
+                } else if (index == Alphabet.NOT_FOUND) {
+                    throw error("character %c not in alphabet",
+                                (char) (src.get(i) & MAX_BYTE));
+                }
+            }
+        } finally {
+            publishMetrics();
         }
+        return k - dstOff;
+    }
 
-        msg = msg.replaceAll("\\s", "");
-        String result = "";
+    /** Fill in _byteIndex and _letterBytes from my alphabet. */
+    private void buildByteTables() {
+        if (!isSingleByte()) {
+            throw error("alphabet does not fit in single bytes");
+        }
+        int[] byteIndex = new int[MAX_BYTE + 1];
+        byte[] letterBytes = new byte[_alphabet.size()];
+        for (int b = 0; b <= MAX_BYTE; b += 1) {
+            byteIndex[b] = isWhitespace((char) b) ? WHITESPACE
+                : _alphabet.toInt((char) b);
+        }
+        for (int c = 0; c < letterBytes.length; c += 1) {
+            letterBytes[c] = (byte) _alphabet.toChar(c);
+        }
+        _letterBytes = letterBytes;
+        _byteIndex = byteIndex;
+    }
 
-        for (int i = 0; i < msg.length(); i++) {
-            char currChar = msg.charAt(i);
-            int currCtoInt = _alphabet.toInt(currChar);
-            int indexConverted = convert(currCtoInt);
-            char toAdd = _alphabet.toChar(indexConverted);
-            result = result + toAdd;
+    /** Append the encoding/decoding of MSG, less whitespace, to OUT,
+     *  updating the state of the rotors accordingly. */
+    void convert(CharSequence msg, Appendable out) {
+        try {
+            for (int i = 0; i < msg.length(); i += 1) {
+                char ch = msg.charAt(i);
+                if (!isWhitespace(ch)) {
+                    out.append(convertChar(ch));
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write converted message: %s",
+                    excp.getMessage());
+        } finally {
+            publishMetrics();
         }
+    }
 
-        return result;
+    /** Add the characters converted and rotor steps taken since the last
+     *  call to the process-wide EnigmaMetrics.  The bulk conversions do
+     *  this themselves; callers of convert(int) should call it at the end
+     *  of each message or section. */
+    void publishMetrics() {
+        EnigmaMetrics metrics = EnigmaMetrics.get();
+        metrics.converted(_converted, _steps, _doubleSteps);
+        _converted = _steps = _doubleSteps = 0;
+        metrics.cacheUsed(_cacheHits - _publishedHits,
+                          _cacheMisses - _publishedMisses,
+                          _cacheEvictions - _publishedEvictions);
+        _publishedHits = _cacheHits;
+        _publishedMisses = _cacheMisses;
+        _publishedEvictions = _cacheEvictions;
+    }
+
+    /** Return the encoding/decoding of the single character CH of my
+     *  alphabet, after first advancing the machine. */
+    private char convertChar(char ch) {
+        int index = _alphabet.toInt(ch);
+        if (index == Alphabet.NOT_FOUND) {
+            throw error("character %c not in alphabet", ch);
+        }
+        return _alphabet.toChar(convert(index));
+    }
+
+    /** Return true iff CH is a whitespace character in the sense of the
+     *  regular expression \s, which messages may contain between
+     *  letters. */
+    static boolean isWhitespace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B'
+                || ch == '\f' || ch == '\r';
     }
 
     /** Common alphabet of my rotors. */
@@ -268,4 +939,79 @@ class Machine {
     /** Exisiting rotors. */
     private ArrayList<Rotor> _rotorslots;
 
+    /** Setting of the rotor in each slot; always 0 for the reflector.
+     *  These are my only rotor state: the Rotors themselves are shared,
+     *  immutable definitions. */
+    private int[] _posns;
+
+    /** Rotor settings, by slot, when my rotors were last set. */
+    private int[] _origin;
+
+    /** Characters converted since my rotors were at _origin. */
+    private long _position;
+
+    /** Characters converted, rotor advances and double steps since the
+     *  last publishMetrics. */
+    private long _converted, _steps, _doubleSteps;
+
+    /** Stepping rules of my current rotors, or null until needed. */
+    private Stepper _stepper;
+
+    /** Number of coming letters known to move only the fast rotor. */
+    private long _run;
+
+    /** Index in my alphabet of each byte value, or NOT_FOUND, or
+     *  WHITESPACE; null until first needed. */
+    private int[] _byteIndex;
+
+    /** Byte value of each letter of my alphabet, once _byteIndex is
+     *  built. */
+    private byte[] _letterBytes;
+
+    /** Where traces of my conversions go, or null if none. */
+    private Tracer _tracer;
+
+    /** Number of message characters in each piece handed to a separate
+     *  task by convertParallel. */
+    static final int PARALLEL_CHUNK = 1 << 16;
+
+    /** A suitable number of rotor states for the composed cache: more
+     *  than the period of three moving rotors of 26 letters. */
+    static final int DEFAULT_CACHE_CAPACITY = 1 << 15;
+
+    /** Largest byte value, as an unsigned int. */
+    static final int MAX_BYTE = 0xFF;
+
+    /** Marks a whitespace byte in _byteIndex. */
+    private static final int WHITESPACE = -2;
+
+    /** Marks a composed-path entry that has not been computed yet. */
+    private static final int UNCOMPOSED = -1;
+
+    /** Marks an unused slot in _cacheKeys. */
+    private static final long EMPTY = -1;
+
+    /** The packed rotor settings whose composed permutation is in each
+     *  slot of _composed, or EMPTY; null until first needed. */
+    private long[] _cacheKeys;
+
+    /** Composed whole-machine permutations, alphabet-size ints per slot
+     *  of _cacheKeys. */
+    private int[] _composed;
+
+    /** Number of slots of _cacheKeys in use. */
+    private int _cached;
+
+    /** Maximum number of cached rotor states; 0 if none. */
+    private int _cacheCapacity;
+
+    /** True iff the rotor settings fit in a long key. */
+    private boolean _keyable;
+
+    /** Cache statistics. */
+    private long _cacheHits, _cacheMisses, _cacheEvictions;
+
+    /** The cache statistics as last passed to EnigmaMetrics. */
+    private long _publishedHits, _publishedMisses, _publishedEvictions;
+
 }
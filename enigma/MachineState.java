@@ -0,0 +1,118 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** An immutable snapshot of the state of a Machine: which rotors are in
+ *  which slots, their settings, the plugboard, and how far the machine
+ *  has advanced since its rotors were last set.
+ *  @author Katrina Sharonin
+ */
+final class MachineState {
+
+    /** A state with ROTORS in slots 0 .. ROTORS.length - 1, at SETTINGS
+     *  (indexed by slot, reflector at 0), reached POSITION characters
+     *  after ORIGIN, using PLUGBOARD.  The arrays are not copied. */
+    MachineState(Rotor[] rotors, int[] origin, long position,
+                 int[] settings, Permutation plugboard) {
+        _rotors = rotors;
+        _origin = origin;
+        _position = position;
+        _settings = settings;
+        _plugboard = plugboard;
+    }
+
+    /** Return the number of rotor slots in this state. */
+    int numRotors() {
+        return _rotors.length;
+    }
+
+    /** Return the rotor in slot K. */
+    Rotor rotor(int k) {
+        return _rotors[k];
+    }
+
+    /** Return the setting of the rotor in slot K. */
+    int setting(int k) {
+        return _settings[k];
+    }
+
+    /** Return the setting of the rotor in slot K when the rotors were
+     *  last set. */
+    int originSetting(int k) {
+        return _origin[k];
+    }
+
+    /** Return the number of characters converted since the rotors were
+     *  last set. */
+    long position() {
+        return _position;
+    }
+
+    /** Return the plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Return a copy of my rotors. */
+    Rotor[] rotors() {
+        return _rotors.clone();
+    }
+
+    /** Return a copy of my rotor settings, indexed by slot. */
+    int[] settings() {
+        return _settings.clone();
+    }
+
+    /** Return a copy of the rotor settings when the rotors were last set. */
+    int[] origin() {
+        return _origin.clone();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof MachineState)) {
+            return false;
+        }
+        MachineState other = (MachineState) obj;
+        return _position == other._position
+            && _plugboard == other._plugboard
+            && Arrays.equals(_rotors, other._rotors)
+            && Arrays.equals(_settings, other._settings)
+            && Arrays.equals(_origin, other._origin);
+    }
+
+    @Override
+    public int hashCode() {
+        return (Arrays.hashCode(_settings) * 31
+                + Arrays.hashCode(_rotors)) * 31 + Long.hashCode(_position);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("[");
+        for (int k = 0; k < _rotors.length; k += 1) {
+            if (k > 0) {
+                result.append(' ');
+            }
+            result.append(_rotors[k].name()).append(':')
+                .append(_rotors[k].alphabet().toChar(_settings[k]));
+        }
+        return result.append(" @").append(_position).append(']').toString();
+    }
+
+    /** Rotors in each slot; slot 0 holds the reflector. */
+    private final Rotor[] _rotors;
+
+    /** Rotor settings when the rotors were last set, by slot. */
+    private final int[] _origin;
+
+    /** Characters converted since the rotors were at _origin. */
+    private final long _position;
+
+    /** Current rotor settings, by slot. */
+    private final int[] _settings;
+
+    /** Plugboard permutation. */
+    private final Permutation _plugboard;
+
+}
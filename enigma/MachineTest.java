@@ -1,5 +1,11 @@
 package enigma;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import org.junit.Test;
 import org.junit.Rule;
@@ -86,6 +92,320 @@ public class MachineTest {
         assertEquals("QVPQSOKOILPUB", mach.convert("FROMHISSHOULD"));
     }
 
+    @Test
+    public void testConvertBulk() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        char[] buf = "  FROM HIS\tSHOULDER\r\nHIAWATHA  ".toCharArray();
+        int n = mach.convert(buf, 1, buf.length - 1, buf, 0);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", new String(buf, 0, n));
+
+        mach.setRotors(SETTING1);
+        StringBuilder out = new StringBuilder("> ");
+        mach.convert("FROMHISSHOULD ERHIAWATHA", out);
+        assertEquals("> QVPQSOKOILPUBKJZPISFXDW", out.toString());
+    }
+
+    @Test
+    public void testConvertBytes() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        assertTrue(mach.isSingleByte());
+        byte[] buf = "  FROM HIS\tSHOULDER\r\nHIAWATHA  "
+            .getBytes(StandardCharsets.US_ASCII);
+        int n = mach.convert(buf, 1, buf.length - 1, buf, 0);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     new String(buf, 0, n, StandardCharsets.US_ASCII));
+
+        mach.setRotors(SETTING1);
+        byte[] bad = "FROM\u00e9".getBytes(StandardCharsets.ISO_8859_1);
+        try {
+            mach.convert(bad, 0, bad.length, new byte[bad.length], 0);
+            fail("converted a character not in the alphabet");
+        } catch (EnigmaException excp) {
+            assertEquals(4, mach.position());
+        }
+
+        Alphabet wide = new Alphabet("AB\u0100");
+        assertFalse(new Machine(wide, 1, 0, new ArrayList<>())
+                    .isSingleByte());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testConvertNotInAlphabet() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("", AZ));
+        mach.convert("HELLO world");
+    }
+
+    /** A machine with four pawls, some rotors having two notches. */
+    private Machine multiNotchMachine() {
+        HashMap<String, String> nav = TestUtils.NAVALA;
+        java.util.ArrayList<Rotor> rotors = new java.util.ArrayList<>();
+        rotors.add(new Reflector("C", new Permutation(nav.get("C"), AZ)));
+        rotors.add(new MovingRotor("VI",
+                new Permutation(nav.get("VI"), AZ), "ZM"));
+        rotors.add(new MovingRotor("VII",
+                new Permutation(nav.get("VII"), AZ), "ZM"));
+        rotors.add(new MovingRotor("II",
+                new Permutation(nav.get("II"), AZ), "E"));
+        rotors.add(new MovingRotor("VIII",
+                new Permutation(nav.get("VIII"), AZ), "ZMA"));
+        Machine mach = new Machine(AZ, 5, 4, rotors);
+        mach.insertRotors(new String[] { "C", "VI", "VII", "II", "VIII" });
+        mach.setRotors("LZDY");
+        mach.setPlugboard(new Permutation("(AQ) (WS) (ED)", AZ));
+        return mach;
+    }
+
+    @Test
+    public void testJump() {
+        Machine stepped = multiNotchMachine();
+        Machine jumped = multiNotchMachine();
+        for (int n : new int[] { 0, 1, 25, 26, 27, 700, 20000 }) {
+            for (int i = 0; i < n; i += 1) {
+                stepped.convert(0);
+            }
+            jumped.jump(n);
+            assertArrayEquals(stepped.settings(), jumped.settings());
+        }
+    }
+
+    @Test
+    public void testConvertParallel() {
+        StringBuilder msg = new StringBuilder();
+        java.util.Random random = new java.util.Random(61);
+        for (int i = 0; i < 5 * Machine.PARALLEL_CHUNK; i += 1) {
+            msg.append(random.nextInt(7) == 0 ? ' '
+                       : TestUtils.UPPER_STRING.charAt(random.nextInt(26)));
+        }
+        Machine sequential = multiNotchMachine();
+        Machine parallel = multiNotchMachine();
+        assertEquals(sequential.convert(msg.toString()),
+                     parallel.convertParallel(msg.toString()));
+        assertArrayEquals(sequential.settings(), parallel.settings());
+
+        int[] traced = new int[1];
+        parallel.setTracer(new Tracer() {
+            @Override
+            public void trace(Machine machine, int input, int plugged,
+                              int output) {
+                traced[0] += 1;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        assertEquals(sequential.convert(msg.toString()),
+                     parallel.convertParallel(msg.toString()));
+        assertEquals(msg.toString().replace(" ", "").length(), traced[0]);
+    }
+
+    @Test
+    public void testPeriod() {
+        assertEquals(26 * 25 * 26, mach1().period());
+
+        Machine mach = multiNotchMachine();
+        long period = mach.period();
+        HashMap<String, Long> seen = new HashMap<>();
+        long n = 0;
+        Long first = null;
+        while (first == null) {
+            first = seen.put(java.util.Arrays.toString(mach.settings()), n);
+            mach.convert(0);
+            n += 1;
+        }
+        assertEquals(n - 1 - first, period);
+    }
+
+    @Test
+    public void testResetDuringRun() {
+        Machine mach = multiNotchMachine();
+        mach.convert("ABC");
+        mach.setRotors("LZDY");
+        String reset = mach.convert("HELLOWORLDHELLOWORLDHELLOWORLD");
+        assertEquals(multiNotchMachine()
+                     .convert("HELLOWORLDHELLOWORLDHELLOWORLD"), reset);
+    }
+
+    @Test
+    public void testSnapshotRestoreSeek() {
+        Machine mach = multiNotchMachine();
+        String msg = "THEBESTLAIDSCHEMESOFMICEANDMENGANGAFTAGLEY";
+        String cipher = mach.convert(msg);
+        MachineState end = mach.snapshot();
+        assertEquals(msg.length(), end.position());
+
+        for (int p : new int[] { 17, 3, 0, 41, 20 }) {
+            mach.seek(p);
+            assertEquals(p, mach.position());
+            assertEquals(cipher.substring(p),
+                         mach.convert(msg.substring(p)));
+        }
+        assertEquals(end, mach.snapshot());
+
+        Machine other = multiNotchMachine();
+        other.restore(end);
+        assertEquals(end, other.snapshot());
+        other.seek(10);
+        assertEquals(cipher.substring(10, 20),
+                     other.convert(msg.substring(10, 20)));
+    }
+
+    @Test
+    public void testRestoreWithoutPlugboard() {
+        Machine bare = multiNotchMachine().copy();
+        bare.insertRotors(new String[] { "C", "VI", "VII", "II", "VIII" });
+        bare.setRotors("LZDY");
+        MachineState start = bare.snapshot();
+        assertNull(start.plugboard());
+
+        Machine mach = multiNotchMachine();
+        mach.restore(start);
+        Machine unplugged = multiNotchMachine();
+        unplugged.setPlugboard(new Permutation("", AZ));
+        assertEquals(unplugged.convert("HELLOWORLD"),
+                     mach.convert("HELLOWORLD"));
+
+        try {
+            mach.restore(multiNotchMachine().copy().snapshot());
+            fail("restored a state with no rotors");
+        } catch (EnigmaException excp) {
+            assertEquals("restore: state has no rotors inserted",
+                         excp.getMessage());
+        }
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        Machine copy = mach.copy();
+        copy.insertRotors(ROTORS1);
+        copy.setRotors("AAAA");
+        copy.setPlugboard(new Permutation("", AZ));
+        assertSame(mach.getRotor(4), copy.getRotor(4));
+        assertEquals("QVPQSOKOILPUB", mach.convert("FROMHISSHOULD"));
+        copy.convert("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        assertEquals("KJZPISFXDW", mach.convert("ERHIAWATHA"));
+    }
+
+    @Test
+    public void testSharedRotorsDoNotInterfere() {
+        Machine first = mach1();
+        Machine second = mach1();
+        first.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        second.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        assertEquals("QVPQSOK", first.convert("FROMHIS"));
+        assertEquals("QVPQSOKOILPUB", second.convert("FROMHISSHOULD"));
+        assertEquals("OILPUB", first.convert("SHOULD"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testRepeatedRotor() {
+        Machine mach = new Machine(AZ, 5, 3, ROTORS.values());
+        mach.insertRotors(new String[] { "B", "Beta", "III", "I", "I" });
+    }
+
+    @Test
+    public void testCompiledSettings() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        CompiledSettings compiled = mach.compile();
+        assertEquals("QVPQSOKOILPUB", mach.convert("FROMHISSHOULD"));
+
+        mach.apply(compiled);
+        assertEquals("QVPQSOKOILPUB", mach.convert("FROMHISSHOULD"));
+        assertEquals(13, mach.position());
+
+        SettingsCache cache = new SettingsCache(2);
+        Lexer lexer = new Lexer();
+        Machine fresh = new Machine(AZ, 5, 3, ROTORS.values());
+        String line = "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+        Main.setUp(fresh, line, 1, lexer, cache);
+        assertEquals("QVPQSOKOILPUB", fresh.convert("FROMHISSHOULD"));
+        Main.setUp(fresh, "* B Beta III IV I AAAA (HQ)(EX)(IP)(TR)(BY)",
+                   2, lexer, cache);
+        Main.setUp(fresh, line, 3, lexer, cache);
+        assertEquals(1, cache.hits());
+        assertEquals("QVPQSOKOILPUB", fresh.convert("FROMHISSHOULD"));
+        assertSame(cache.get(line).plugboard(),
+                   cache.get("* B Beta III IV I AAAA (HQ)(EX)(IP)(TR)(BY)")
+                   .plugboard());
+    }
+
+    @Test
+    public void testTrace() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TraceWriter tracer = new TraceWriter(bytes, false);
+        Machine mach = mach1();
+        mach.setTracer(tracer);
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        assertEquals("QVP", mach.convert("FRO"));
+        tracer.close();
+        assertEquals(3 * TraceDecoder.recordSize(4), bytes.size());
+        StringBuilder text = new StringBuilder();
+        TraceDecoder.decode(new DataInputStream(
+            new ByteArrayInputStream(bytes.toByteArray())), text);
+        String[] lines = text.toString().split(System.lineSeparator());
+        assertEquals(3, lines.length);
+        assertEquals("[AXLF] F -> F -> Q", lines[0]);
+        assertTrue(lines[2].endsWith(" O -> O -> P"));
+    }
+
+    @Test
+    public void testMetrics() {
+        EnigmaMetrics metrics = EnigmaMetrics.get();
+        Machine mach = mach1();
+        long converted = metrics.getCharactersConverted();
+        long steps = metrics.getRotorSteps();
+        long rebuilds = metrics.getPlugboardRebuilds();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        assertEquals("QVPQSOKOILPUB", mach.convert("FROMHISSHOULD"));
+        assertEquals(13, metrics.getCharactersConverted() - converted);
+        assertTrue(metrics.getRotorSteps() - steps >= 13);
+        assertEquals(1, metrics.getPlugboardRebuilds() - rebuilds);
+    }
+
+    @Test
+    public void testComposedCache() {
+        EnigmaMetrics metrics = EnigmaMetrics.get();
+        long hits = metrics.getCacheHits();
+        long misses = metrics.getCacheMisses();
+        long evictions = metrics.getCacheEvictions();
+        Machine mach = mach1();
+        assertEquals(0, mach.cacheCapacity());
+        mach.setCacheCapacity(Machine.DEFAULT_CACHE_CAPACITY);
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", mach.convert(msg));
+        assertEquals(0, mach.cacheHits());
+        mach.setRotors(SETTING1);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", mach.convert(msg));
+        assertEquals(msg.length(), mach.cacheHits());
+
+        Machine uncached = mach1();
+        uncached.setPlugboard(new Permutation("(YF) (HZ)", AZ));
+        String expected = uncached.convert(msg);
+        mach.setRotors(SETTING1);
+        mach.setPlugboard(new Permutation("(YF) (HZ)", AZ));
+        assertEquals(expected, mach.convert(msg));
+
+        assertEquals(msg.length(), mach.cacheEvictions());
+        mach.setCacheCapacity(2);
+        assertEquals(2 * msg.length(), mach.cacheEvictions());
+        mach.setRotors(SETTING1);
+        assertEquals(expected, mach.convert(msg));
+        assertEquals(msg.length(), mach.cacheHits());
+        assertEquals(0, uncached.cacheMisses());
+
+        assertEquals(mach.cacheHits(), metrics.getCacheHits() - hits);
+        assertEquals(mach.cacheMisses(), metrics.getCacheMisses() - misses);
+        assertEquals(mach.cacheEvictions(),
+                     metrics.getCacheEvictions() - evictions);
+    }
+
     @Test
     public void testPlugboard() {
         Machine mach = mach1();
@@ -1,15 +1,40 @@
 package enigma;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
-
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Scanner;
-import java.util.regex.Pattern;
 import java.util.List;
 import java.util.Collection;
-import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 import ucb.util.CommandArgs;
 import static enigma.EnigmaException.*;
@@ -27,18 +52,33 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.  With --stream, input is read in fixed-size
+     *  chunks rather than whole lines, so that memory use does not grow
+     *  with the length of a message line.  With --mmap, INPUT and OUTPUT
+     *  must both be given; they are memory-mapped and treated as
+     *  ISO-8859-1 text.  With --parallel, the sections of the input that
+     *  start at each settings line are converted concurrently.  With
+     *  --serve=ADDRESS, only CONFIG is given, and the program instead runs
+     *  a Server on ADDRESS (a loopback port, or unix:PATH), which cannot
+     *  be traced.  With --verbose, a line tracing each converted letter
+     *  is printed on the standard error; with --trace=FILE, the same
+     *  trace is written to FILE in binary, to be printed later by
+     *  TraceDecoder.  With --compile, CONFIG is instead compiled into a
+     *  binary ConfigImage, written to ARGS[1] if given and otherwise to
+     *  CONFIG.img; whenever CONFIG.img is an up-to-date image of CONFIG,
+     *  it is loaded in place of CONFIG.  With --search=K, the input is instead taken as one
+     *  ciphertext, and the K most likely rotor orders and settings for it
+     *  (found by KeySearch, with no plugboard) are printed on the output
+     *  as settings lines, best first; candidates and progress are
+     *  reported on the standard error as the search runs.  With --raw,
+     *  converted messages are printed without the spaces that otherwise
+     *  separate them into groups of five letters.  With --cache=N, each
+     *  machine keeps the composed permutations of up to N rotor states
+     *  (see Machine.setCacheCapacity), and its hits, misses and
+     *  evictions are counted in EnigmaMetrics. */
     public static void main(String... args) {
         try {
-            CommandArgs options =
-                new CommandArgs("--verbose --=(.*){1,3}", args);
-            if (!options.ok()) {
-                throw error("Usage: java enigma.Main [--verbose] "
-                            + "[INPUT [OUTPUT]]");
-            }
-
-            _verbose = options.contains("--verbose");
-            new Main(options.get("--")).process();
+            run(args);
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -46,18 +86,131 @@ public final class Main {
         System.exit(1);
     }
 
+    /** Do what main(ARGS) does, but report an error by throwing an
+     *  EnigmaException rather than by exiting.  Every option not given in
+     *  ARGS is turned off, so that run may be called more than once. */
+    static void run(String... args) {
+        CommandArgs options =
+            new CommandArgs("--verbose --trace=(.+) --stream --mmap "
+                            + "--parallel --serve=(.+) --compile "
+                            + "--raw --cache=(\\d{1,9}) "
+                            + "--search=([1-9]\\d{0,5}) "
+                            + "--=(.*){1,3}", args);
+        if (!options.ok() || options.contains("--mmap")
+                             && options.get("--").size() != 3
+            || options.contains("--serve")
+               && options.get("--").size() != 1
+            || options.contains("--compile")
+               && options.get("--").size() > 2
+            || options.contains("--verbose")
+               && options.contains("--trace")
+            || options.contains("--serve")
+               && (options.contains("--verbose")
+                   || options.contains("--trace"))
+            || options.contains("--search")
+               && (options.contains("--stream")
+                   || options.contains("--mmap")
+                   || options.contains("--parallel")
+                   || options.contains("--serve")
+                   || options.contains("--compile"))) {
+            throw error("Usage: java enigma.Main "
+                        + "[--verbose | --trace=FILE] "
+                        + "[--stream | --parallel] [--raw] "
+                        + "[--cache=N] CONFIG "
+                        + "[INPUT [OUTPUT]] | --mmap CONFIG INPUT OUTPUT"
+                        + " | --serve=ADDRESS CONFIG"
+                        + " | --compile CONFIG [IMAGE]"
+                        + " | --search=K CONFIG [INPUT [OUTPUT]]");
+        }
+
+        _verbose = options.contains("--verbose");
+        _streaming = options.contains("--stream");
+        _mapped = options.contains("--mmap");
+        _parallel = options.contains("--parallel");
+        _serveAddress = options.getFirst("--serve");
+        _compiling = options.contains("--compile");
+        _group = options.contains("--raw") ? 0 : GROUP;
+        _cacheCapacity = 0;
+        if (options.contains("--cache")) {
+            _cacheCapacity = Integer.parseInt(options.getFirst("--cache"));
+        }
+        _searchKeep = 0;
+        if (options.contains("--search")) {
+            _searchKeep = Integer.parseInt(options.getFirst("--search"));
+        }
+        openTracer(options.getFirst("--trace"));
+        try {
+            Main main = new Main(options.get("--"));
+            try {
+                main.process();
+            } finally {
+                main.close();
+            }
+        } finally {
+            closeTracer();
+        }
+    }
+
+    /** Set up the Tracer given to every machine I configure: one writing
+     *  to the file named TRACEFILE, if it is not null, or else one
+     *  printing on the standard error if --verbose was given. */
+    private static void openTracer(String traceFile) {
+        if (traceFile != null) {
+            try {
+                _traceFile = new FileOutputStream(traceFile);
+            } catch (IOException excp) {
+                throw error("could not open %s", traceFile);
+            }
+            _tracer = new TraceWriter(_traceFile, false);
+        } else if (_verbose) {
+            _tracer = new TraceWriter(System.err, true);
+        }
+    }
+
+    /** Write out and close my Tracer, if any. */
+    private static void closeTracer() {
+        if (_tracer != null) {
+            _tracer.close();
+            _tracer = null;
+        }
+        if (_traceFile != null) {
+            try {
+                _traceFile.close();
+            } catch (IOException excp) {
+                throw error("could not write trace: %s", excp.getMessage());
+            } finally {
+                _traceFile = null;
+            }
+        }
+    }
+
     /** Open the necessary files for non-option arguments ARGS (see comment
       *  on main). */
     Main(List<String> args) {
-        _config = getInput(args.get(0));
+        _configName = args.get(0);
+        _config = readFile(_configName);
+
+        if (_compiling) {
+            if (args.size() > 1) {
+                _imageName = args.get(1);
+            } else {
+                _imageName = ConfigImage.imageName(_configName);
+            }
+            return;
+        }
 
         if (args.size() > 1) {
-            _input = getInput(args.get(1));
+            _inputName = args.get(1);
+            if (!_streaming && !_mapped) {
+                _input = getInput(_inputName);
+            }
         } else {
             _input = new Scanner(System.in);
         }
 
-        if (args.size() > 2) {
+        if (_mapped) {
+            _outputName = args.get(2);
+        } else if (args.size() > 2) {
             _output = getOutput(args.get(2));
         } else {
             _output = System.out;
@@ -73,6 +226,17 @@ public final class Main {
         }
     }
 
+    /** Return the contents of the file named NAME, decoded with the
+     *  default charset. */
+    private String readFile(String name) {
+        try {
+            return new String(Files.readAllBytes(Paths.get(name)),
+                              Charset.defaultCharset());
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
     /** Return a PrintStream writing to the file named NAME. */
     private PrintStream getOutput(String name) {
         try {
@@ -82,187 +246,847 @@ public final class Main {
         }
     }
 
+    /** Close my input and output files, if any. */
+    private void close() {
+        if (_input != null && _inputName != null) {
+            _input.close();
+        }
+        if (_output != null && _output != System.out) {
+            _output.close();
+        }
+    }
+
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
     private void process() {
+        if (_compiling) {
+            ConfigImage.write(parseConfig(), _configName, _imageName);
+            return;
+        }
+        if (_searchKeep > 0) {
+            processSearch();
+            return;
+        }
+        if (_serveAddress != null) {
+            new Server(readConfig(), _serveAddress, System.err).serve();
+            return;
+        }
+        if (_mapped) {
+            processMapped();
+            return;
+        }
+        if (_streaming) {
+            processStream();
+            return;
+        }
+        if (_parallel) {
+            processParallel();
+            return;
+        }
         Machine currMachine = readConfig();
+        int lineNumber = 0;
+        GroupedWriter output = groupedOutput();
 
         try {
             while (_input.hasNextLine()) {
 
                 String currLine = _input.nextLine();
+                lineNumber += 1;
 
                 if (currLine.contains("*")) {
-                    setUp(currMachine, currLine);
+                    startSection(currMachine, currLine, lineNumber);
                 } else {
 
-                    String converted = currMachine.convert(currLine);
+                    String converted;
+                    try {
+                        converted = currMachine.convert(currLine);
+                    } catch (EnigmaException excp) {
+                        throw messageError(currMachine, excp);
+                    }
 
-                    printMessageLine(converted);
+                    printMessageLine(converted, output);
 
                 }
             }
-        } catch (ArrayIndexOutOfBoundsException excp) {
-            throw error("process: no setting line given");
+            endSection(currMachine);
+        } finally {
+            flush(output);
         }
 
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
+    /** Instead of process(), read all of _input as one ciphertext and
+     *  print the _searchKeep best keys for it found by KeySearch, best
+     *  first, as settings lines on _output. */
+    private void processSearch() {
+        Machine machine = readConfig();
+        StringBuilder ciphertext = new StringBuilder();
+        while (_input.hasNextLine()) {
+            ciphertext.append(_input.nextLine()).append('\n');
+        }
+        KeySearch search = new KeySearch(machine, _searchKeep);
+        search.setListener(candidate ->
+            System.err.printf("candidate %s%n", candidate));
+        search.setProgress(System.err, SEARCH_PROGRESS_INTERVAL);
+        for (KeySearch.Candidate candidate
+                 : search.search(ciphertext, null,
+                                 ForkJoinPool.commonPool())) {
+            _output.println(candidate.settingsLine());
+        }
+    }
 
-    private Machine readConfig() {
+    /** Like process(), but since each settings line completely resets the
+     *  machine, hands each settings line and the message lines after it to
+     *  a pool of worker threads, each with its own copy of the configured
+     *  machine, and prints the results in input order.  At most
+     *  MAX_PENDING sections per worker are in progress at once.  Message
+     *  lines before the first settings line are converted with the
+     *  unconfigured machine, and so fail as they do in process().  When
+     *  tracing, each section keeps its own trace, which is written out
+     *  with its output, so that the records are in input order too. */
+    private void processParallel() {
+        Machine config = readConfig();
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ThreadLocal<Machine> machines = ThreadLocal.withInitial(config::copy);
+        ArrayDeque<Future<Section>> pending = new ArrayDeque<>();
+        try {
+            Section section = new Section(null);
+            Supplier<Machine> unconfigured = config::copy;
+            while (_input.hasNextLine()) {
+                String currLine = _input.nextLine();
+                if (currLine.contains("*")) {
+                    if (section.hasContent()) {
+                        pending.add(workers.submit(section.task(
+                            section.hasSettings() ? machines::get
+                                                  : unconfigured)));
+                    }
+                    section = new Section(currLine);
+                    if (pending.size() >= MAX_PENDING * threads) {
+                        printSection(pending.remove());
+                    }
+                } else {
+                    section.add(currLine);
+                }
+            }
+            if (section.hasContent()) {
+                pending.add(workers.submit(section.task(
+                    section.hasSettings() ? machines::get : unconfigured)));
+            }
+            while (!pending.isEmpty()) {
+                printSection(pending.remove());
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /** Print the output of the section whose conversion is RESULT, waiting
+     *  for it if need be, and then report its error, if any. */
+    private void printSection(Future<Section> result) {
+        Section section;
         try {
-            _alphabet = new Alphabet(_config.next());
+            section = result.get();
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            throw error("section failed: %s", excp.getCause());
+        }
+        _output.print(section.output());
+        if (section.trace() != null) {
+            section.trace().writeTo(_tracer);
+        }
+        if (section.failure() != null) {
+            throw section.failure();
+        }
+    }
+
+    /** A settings line and the message lines that follow it, up to the
+     *  next settings line, converted by processParallel. */
+    private class Section {
 
-            int s;
-            int p;
+        /** A section starting with SETTINGS, or with no settings line if
+         *  SETTINGS is null. */
+        Section(String settings) {
+            _settings = settings;
+        }
+
+        /** Add message line LINE to me. */
+        void add(String line) {
+            _lines.add(line);
+        }
+
+        /** Return true iff I have a settings line or a message line. */
+        boolean hasContent() {
+            return hasSettings() || !_lines.isEmpty();
+        }
+
+        /** Return true iff I start with a settings line. */
+        boolean hasSettings() {
+            return _settings != null;
+        }
+
+        /** Return a task that converts me with the machine supplied by
+         *  MACHINES and returns me. */
+        Callable<Section> task(Supplier<Machine> machines) {
+            return () -> {
+                StringWriter text = new StringWriter();
+                GroupedWriter output =
+                    new GroupedWriter(text, _group, SECTION_BUFFER);
+                try {
+                    long start = System.nanoTime();
+                    Machine M = machines.get();
+                    if (_tracer != null) {
+                        _trace = new TraceBuffer();
+                        M.setTracer(_trace);
+                    }
+                    if (_settings != null) {
+                        setUp(M, _settings, 0, new Lexer(),
+                              _settingsCache);
+                    }
+                    for (String line : _lines) {
+                        String converted;
+                        try {
+                            converted = M.convert(line);
+                        } catch (EnigmaException excp) {
+                            throw messageError(M, excp);
+                        }
+                        printMessageLine(converted, output);
+                    }
+                    M.publishMetrics();
+                    EnigmaMetrics.get()
+                        .sectionProcessed(System.nanoTime() - start);
+                } catch (EnigmaException excp) {
+                    _error = excp;
+                }
+                flush(output);
+                _output = text.toString();
+                _lines = null;
+                return this;
+            };
+        }
+
+        /** Return my converted and formatted message lines. */
+        String output() {
+            return _output;
+        }
+
+        /** Return the error that stopped my conversion, or null. */
+        EnigmaException failure() {
+            return _error;
+        }
 
-            if (!_config.hasNextLine()) {
-                throw new EnigmaException("missing an int line");
+        /** Return the trace of my conversion, or null if not tracing. */
+        TraceBuffer trace() {
+            return _trace;
+        }
+
+        /** My settings line, or null. */
+        private final String _settings;
+        /** My message lines. */
+        private ArrayList<String> _lines = new ArrayList<>();
+        /** My output. */
+        private String _output;
+        /** Error converting me, if any. */
+        private EnigmaException _error;
+        /** Trace of my conversion, if tracing. */
+        private TraceBuffer _trace;
+    }
+
+    /** Like process(), but reads the input in chunks of CHUNK characters
+     *  and converts and prints each chunk as it arrives, so that no whole
+     *  message line is ever held in memory.  In this mode a settings line
+     *  is one whose first non-blank character is '*'.  When the letters
+     *  are all single bytes in the default charset, the input is converted
+     *  as bytes by processStreamBytes() instead. */
+    private void processStream() {
+        Machine currMachine = readConfig();
+        Charset charset = Charset.defaultCharset();
+        if (bytesSuffice(currMachine, charset)) {
+            processStreamBytes(currMachine, charset);
+            return;
+        }
+        GroupedWriter output = groupedOutput();
+        char[] buf = new char[CHUNK];
+        char[] converted = new char[CHUNK];
+        StringBuilder settings = new StringBuilder();
+        int state = LINE_START;
+        boolean blankLine = false;
+
+        try (Reader input = openStream()) {
+            for (int n = input.read(buf); n >= 0; n = input.read(buf)) {
+                int i = 0;
+                while (i < n) {
+                    char ch = buf[i];
+                    if (state == SETTINGS) {
+                        int end = indexOf(buf, '\n', i, n);
+                        settings.append(buf, i, end - i);
+                        if (end < n) {
+                            startSection(currMachine, settings, 0);
+                            settings.setLength(0);
+                            state = LINE_START;
+                            blankLine = false;
+                        }
+                        i = end + 1;
+                    } else if (ch == '\n') {
+                        output.write('\n');
+                        state = LINE_START;
+                        blankLine = false;
+                        i += 1;
+                    } else if (state == LINE_START && ch == '*') {
+                        state = SETTINGS;
+                    } else if (state == LINE_START
+                               && Machine.isWhitespace(ch)) {
+                        blankLine = true;
+                        i += 1;
+                    } else {
+                        state = MESSAGE;
+                        int end = indexOf(buf, '\n', i, n);
+                        long start = currMachine.position();
+                        int len;
+                        try {
+                            len = currMachine.convert(buf, i, end - i,
+                                                      converted, 0);
+                        } catch (EnigmaException excp) {
+                            len = (int) (currMachine.position() - start);
+                            output.write(converted, 0, len);
+                            throw messageError(currMachine, excp);
+                        }
+                        output.write(converted, 0, len);
+                        i = end;
+                    }
+                }
+            }
+            if (state == SETTINGS) {
+                startSection(currMachine, settings, 0);
+            } else if (state == MESSAGE || blankLine) {
+                output.write('\n');
             }
+            endSection(currMachine);
+        } catch (IOException excp) {
+            throw error("error reading input: %s", excp.getMessage());
+        } finally {
+            flush(output);
+        }
+    }
+
+    /** Like processStream(), but maps the input and output files into
+     *  memory, MAP_WINDOW bytes at a time, and converts directly from one
+     *  to the other, reading each byte as an ISO-8859-1 character.  Files
+     *  of any size are handled by sliding the windows along. */
+    private void processMapped() {
+        Machine currMachine = readConfig();
+        if (!currMachine.isSingleByte()) {
+            throw error("--mmap needs a single-byte alphabet");
+        }
 
-            if (!_config.hasNextInt()) {
-                throw new EnigmaException("need 1 of two ints");
+        try (FileChannel input = FileChannel.open(Paths.get(_inputName));
+             FileChannel output = FileChannel.open(Paths.get(_outputName),
+                     StandardOpenOption.READ, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedOutput mapped = new MappedOutput(output);
+            ByteSections sections =
+                new ByteSections(currMachine, mapped,
+                                 StandardCharsets.ISO_8859_1);
+            try {
+                long size = input.size();
+                for (long start = 0; start < size; start += MAP_WINDOW) {
+                    sections.convert(
+                        input.map(FileChannel.MapMode.READ_ONLY, start,
+                                  Math.min(MAP_WINDOW, size - start)));
+                }
+                sections.finish();
+            } finally {
+                sections.flush();
+                mapped.truncate();
             }
-            s = _config.nextInt();
+        } catch (IOException excp) {
+            throw error("could not map %s or %s: %s", _inputName,
+                        _outputName, excp.getMessage());
+        }
+    }
 
-            if (!_config.hasNextInt()) {
-                throw new EnigmaException("need two ints");
+    /** Like processStream(), but for input in CHARSET whose letters, for
+     *  machine M, are single bytes (see bytesSuffice).  The input is read
+     *  and converted as bytes and the output written as bytes, so that
+     *  only settings lines are ever decoded. */
+    private void processStreamBytes(Machine M, Charset charset) {
+        ByteSections sections = new ByteSections(M, _output, charset);
+        try (ReadableByteChannel input = openChannel()) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(CHUNK);
+            try {
+                while (input.read(buf) >= 0) {
+                    buf.flip();
+                    sections.convert(buf);
+                    buf.clear();
+                }
+                sections.finish();
+            } finally {
+                sections.flush();
             }
+        } catch (IOException excp) {
+            throw error("error reading input: %s", excp.getMessage());
+        }
+    }
 
-            p = _config.nextInt();
+    /** Return true iff text in CHARSET may be converted by M a byte at a
+     *  time: each letter of M's alphabet is a single byte in CHARSET, and
+     *  no byte of a longer character can be mistaken for a letter,
+     *  whitespace, '*' or '\n'. */
+    private static boolean bytesSuffice(Machine M, Charset charset) {
+        if (!M.isSingleByte()) {
+            return false;
+        }
+        if (charset.equals(StandardCharsets.ISO_8859_1)) {
+            return true;
+        }
+        return M.alphabet().maxChar() <= MAX_ASCII
+            && (charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.US_ASCII));
+    }
+
+    /** The conversion of single-byte input in --stream or --mmap mode,
+     *  fed to it a chunk at a time.  Message lines are converted from
+     *  bytes to bytes by Machine.convert(ByteBuffer, ...); only settings lines
+     *  are decoded, using a given charset.  As in processStream(), a
+     *  settings line is one whose first non-blank character is '*'. */
+    private class ByteSections {
+
+        /** A conversion using machine M, writing to OUTPUT, and decoding
+         *  settings lines with CHARSET. */
+        ByteSections(Machine M, OutputStream output, Charset charset) {
+            _machine = M;
+            _out = new GroupedOutputStream(output, _group);
+            _charset = charset;
+        }
 
+        /** Convert the bytes of BUF from its position to its limit, which
+         *  follow those of all previous calls, leaving its position at its
+         *  limit.  BUF may be a direct or mapped buffer; message bytes are
+         *  converted straight from it, CHUNK at a time. */
+        void convert(ByteBuffer buf) throws IOException {
+            int i = buf.position();
+            int n = buf.limit();
+            while (i < n) {
+                byte ch = buf.get(i);
+                if (_state == SETTINGS) {
+                    int end = indexOf(buf, (byte) '\n', i, n);
+                    for (int k = i; k < end; k += 1) {
+                        _settings.write(buf.get(k));
+                    }
+                    if (end < n) {
+                        endSettings();
+                    }
+                    i = end + 1;
+                } else if (ch == '\n') {
+                    _out.endLine();
+                    _state = LINE_START;
+                    _blankLine = false;
+                    i += 1;
+                } else if (_state == LINE_START && ch == '*') {
+                    _state = SETTINGS;
+                } else if (_state == LINE_START
+                           && Machine.isWhitespace((char) ch)) {
+                    _blankLine = true;
+                    i += 1;
+                } else {
+                    _state = MESSAGE;
+                    int end = Math.min(indexOf(buf, (byte) '\n', i, n),
+                                       i + _converted.length);
+                    long start = _machine.position();
+                    int len;
+                    try {
+                        len = _machine.convert(buf, i, end - i,
+                                               _converted, 0);
+                    } catch (EnigmaException excp) {
+                        int done = (int) (_machine.position() - start);
+                        _out.write(_converted, 0, done);
+                        throw messageError(_machine,
+                                           badCharacter(buf, i, end, done,
+                                                        excp));
+                    }
+                    _out.write(_converted, 0, len);
+                    i = end;
+                }
+            }
+            buf.position(n);
+        }
 
-            if (s <= p | p <= 0) {
-                System.out.println("error will be faced");
-                throw new EnigmaException("s p etc violated");
+        /** Finish off the input, which has all been passed to convert().
+         *  The output is not written out until flush(). */
+        void finish() throws IOException {
+            if (_state == SETTINGS) {
+                endSettings();
+            } else if (_state == MESSAGE || _blankLine) {
+                _out.endLine();
             }
+            endSection(_machine);
+        }
 
+        /** Write out the output converted so far, including that of a
+         *  conversion stopped by an error. */
+        void flush() throws IOException {
+            _out.flush();
+        }
 
-            if (_config.hasNextInt()) {
-                throw new EnigmaException("only 2 ints allowed");
+        /** Return the error to report for EXCP, thrown on reaching the
+         *  character after the first DONE letters of BUF[START .. END-1]
+         *  because it is not in the alphabet.  EXCP names the byte found
+         *  there, which is wrong if it starts a longer character. */
+        private EnigmaException badCharacter(ByteBuffer buf, int start,
+                                             int end, int done,
+                                             EnigmaException excp) {
+            int i;
+            for (i = start; i < end; i += 1) {
+                if (!Machine.isWhitespace((char) buf.get(i))) {
+                    if (done == 0) {
+                        break;
+                    }
+                    done -= 1;
+                }
+            }
+            if (i == end || buf.get(i) >= 0
+                || _charset.equals(StandardCharsets.ISO_8859_1)) {
+                return excp;
             }
+            byte[] character = new byte[Math.min(end - i, MAX_CHAR_BYTES)];
+            buf.get(i, character);
+            String decoded = new String(character, _charset);
+            return error("character %c not in alphabet", decoded.charAt(0));
+        }
+
+        /** Set up my machine from the settings line just read. */
+        private void endSettings() {
+            startSection(_machine,
+                         new String(_settings.toByteArray(), _charset), 0);
+            _settings.reset();
+            _state = LINE_START;
+            _blankLine = false;
+        }
 
+        /** Machine doing the conversion. */
+        private final Machine _machine;
+        /** Destination of the converted messages. */
+        private final GroupedOutputStream _out;
+        /** Charset of settings lines. */
+        private final Charset _charset;
+        /** LINE_START, SETTINGS or MESSAGE. */
+        private int _state = LINE_START;
+        /** True iff the current input line so far is all blanks. */
+        private boolean _blankLine;
+        /** The settings line being read. */
+        private final ByteArrayOutputStream _settings =
+            new ByteArrayOutputStream();
+        /** Converted letters of the current chunk. */
+        private final byte[] _converted = new byte[CHUNK];
+    }
 
-            Collection<Rotor> allRotors = new ArrayList<Rotor>();
+    /** An OutputStream onto a file mapped into memory MAP_WINDOW bytes at
+     *  a time, moving the window along when it is full. */
+    private static class MappedOutput extends OutputStream {
 
-            while (_config.hasNext()) {
-                Rotor addToList = readRotor();
-                allRotors.add(addToList);
+        /** A stream writing to the start of the file open on CHANNEL. */
+        MappedOutput(FileChannel channel) throws IOException {
+            _channel = channel;
+            _window = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                                  MAP_WINDOW);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (!_window.hasRemaining()) {
+                    _start += _window.position();
+                    _window = _channel.map(FileChannel.MapMode.READ_WRITE,
+                                           _start, MAP_WINDOW);
+                }
+                int n = Math.min(len, _window.remaining());
+                _window.put(b, off, n);
+                off += n;
+                len -= n;
             }
+        }
+
+        /** Cut my file off after the last byte written. */
+        void truncate() throws IOException {
+            _channel.truncate(_start + _window.position());
+        }
+
+        /** The file written. */
+        private final FileChannel _channel;
+        /** Current window onto the file. */
+        private MappedByteBuffer _window;
+        /** Offset in the file of the start of _window. */
+        private long _start;
+    }
 
-            return new Machine(_alphabet, s, p, allRotors);
+    /** Return the index of the first CH in BUF[START .. END-1], or END if
+     *  there is none. */
+    private static int indexOf(ByteBuffer buf, byte ch, int start,
+                               int end) {
+        for (int i = start; i < end; i += 1) {
+            if (buf.get(i) == ch) {
+                return i;
+            }
+        }
+        return end;
+    }
 
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+    /** Return the index of the first CH in BUF[START .. END-1], or END if
+     *  there is none. */
+    private static int indexOf(char[] buf, char ch, int start, int end) {
+        for (int i = start; i < end; i += 1) {
+            if (buf[i] == ch) {
+                return i;
+            }
         }
+        return end;
     }
 
-    public ArrayList<Character> arrayMaker(String input) {
+    /** Return a Reader on a buffered channel from the input file, or from
+     *  the standard input if none was given. */
+    private Reader openStream() throws IOException {
+        return Channels.newReader(openChannel(),
+                Charset.defaultCharset().newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE),
+                CHUNK);
+    }
 
-        ArrayList<Character> result = new ArrayList();
-        for (int i = 0; i < input.length(); i++) {
-            char curChar = input.charAt(i);
-            result.add(curChar);
+    /** Return a channel from the input file, or from the standard input
+     *  if none was given. */
+    private ReadableByteChannel openChannel() throws IOException {
+        if (_inputName == null) {
+            return Channels.newChannel(System.in);
         }
+        return FileChannel.open(Paths.get(_inputName));
+    }
 
+    /** Return an Enigma machine configured from the image of the
+     *  configuration file, if it has an up-to-date one, and otherwise from
+     *  the contents of configuration file _config. */
+    private Machine readConfig() {
+        Machine result = ConfigImage.load(_configName);
+        if (result == null) {
+            result = parseConfig();
+        } else {
+            _alphabet = result.alphabet();
+        }
+        result.setTracer(_tracer);
+        result.setCacheCapacity(_cacheCapacity);
         return result;
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
-        try {
-            Rotor expecty;
-
-            String namey = _config.next();
-            Permutation permy;
-            String permcycles = "";
-            String potentialNotches = _config.next();
+    /** Return an Enigma machine configured from the contents of configuration
+     *  file _config. */
 
-            Pattern hopeThisWork = Pattern.compile("\\([^*]+");
+    private Machine parseConfig() {
+        Lexer config = new Lexer();
+        config.reset(_config, 1);
+        if (!config.next()) {
+            throw config.error("configuration file truncated");
+        }
+        _alphabet = new Alphabet(config.string());
 
-            while (_config.hasNext(hopeThisWork)) {
-                String theNextCheck = _config.next();
+        if (!config.next()) {
+            throw config.error("missing an int line");
+        }
+        if (!config.isInt()) {
+            throw config.error("need 1 of two ints");
+        }
+        int s = config.intValue();
 
-                ArrayList arrayP = arrayMaker(theNextCheck);
+        if (!config.next() || !config.isInt()) {
+            throw config.error("need two ints");
+        }
+        int p = config.intValue();
 
-                if (arrayP.get(0).equals('(')
-                        && arrayP.get(arrayP.size() - 1).equals(')')) {
-                    permcycles = permcycles +  theNextCheck;
+        if (s <= p | p <= 0) {
+            System.out.println("error will be faced");
+            throw config.error("s p etc violated");
+        }
 
-                } else {
-                    throw new EnigmaException("end ) missing");
-                }
-            }
+        boolean more = config.next();
+        if (more && config.isInt()) {
+            throw config.error("only 2 ints allowed");
+        }
 
+        Collection<Rotor> allRotors = new ArrayList<Rotor>();
+        while (more) {
+            more = readRotor(config, allRotors);
+        }
 
-            permy = new Permutation(permcycles, _alphabet);
+        return new Machine(_alphabet, s, p, allRotors);
+    }
 
-            if (potentialNotches.charAt(0) == 'M') {
-                String notchesPassed = potentialNotches.substring(1);
-                expecty = new MovingRotor(namey, permy, notchesPassed);
-            } else if (potentialNotches.charAt(0) == 'N') {
-                expecty = new FixedRotor(namey, permy);
-            } else {
-                expecty = new Reflector(namey, permy);
+    /** Add to ROTORS the rotor whose description starts at the current
+     *  token of CONFIG, leaving CONFIG at the token after it.  Return
+     *  false iff there is no such token. */
+    private boolean readRotor(Lexer config, Collection<Rotor> rotors) {
+        String name = config.string();
+        if (!config.next()) {
+            throw config.error("bad rotor description");
+        }
+        String notches = config.string();
+
+        config.startCycles(_alphabet);
+        int cyclesStart = -1, cyclesEnd = -1;
+        boolean simple = true;
+        boolean more;
+        while ((more = config.next()) && isCycleToken(config)) {
+            if (config.charAt(config.length() - 1) != ')') {
+                throw config.error("end ) missing");
+            }
+            if (cyclesStart < 0) {
+                cyclesStart = config.start();
             }
+            cyclesEnd = config.end();
+            simple = simple && config.addCycles(_alphabet.size());
+        }
 
-            return expecty;
+        Permutation perm;
+        if (cyclesStart < 0) {
+            perm = new Permutation("", _alphabet);
+        } else if (simple) {
+            perm = new Permutation(config.cycles().clone(), _alphabet);
+        } else {
+            perm = new Permutation(config.string(cyclesStart, cyclesEnd),
+                                   _alphabet);
+        }
 
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+        if (notches.charAt(0) == 'M') {
+            rotors.add(new MovingRotor(name, perm, notches.substring(1)));
+        } else if (notches.charAt(0) == 'N') {
+            rotors.add(new FixedRotor(name, perm));
+        } else {
+            rotors.add(new Reflector(name, perm));
+        }
+        return more;
+    }
+
+    /** Return true iff the current token of CONFIG is part of a rotor's
+     *  cycles rather than the start of the next rotor: a '(' followed by
+     *  at least one character, none of them '*'. */
+    private static boolean isCycleToken(Lexer config) {
+        if (config.length() < 2 || config.charAt(0) != '(') {
+            return false;
+        }
+        for (int k = 1; k < config.length(); k += 1) {
+            if (config.charAt(k) == '*') {
+                return false;
+            }
         }
+        return true;
     }
 
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        Scanner settingsHandler = new Scanner(settings);
-        settingsHandler.next();
+    static void setUp(Machine M, String settings) {
+        Lexer lexer = new Lexer();
+        lexer.reset(settings, 0);
+        setUp(M, lexer);
+    }
 
-        int sizetoCallNextForNames = M.numRotors();
-        String[] arrayForInsertRotors =
-                new String[sizetoCallNextForNames];
+    /** Set M according to the settings line LINE, which is line
+     *  LINENUMBER of the input (0 if not known), reusing its compiled
+     *  form from CACHE if possible.  Otherwise parse it with LEXER and add
+     *  the result to CACHE.  CACHE must only be used with M and the other
+     *  copies of M's configuration. */
+    static void setUp(Machine M, String line, int lineNumber, Lexer lexer,
+                      SettingsCache cache) {
+        CompiledSettings compiled = cache.get(line);
+        if (compiled != null) {
+            M.apply(compiled);
+            EnigmaMetrics.get().settingsApplied();
+            return;
+        }
+        lexer.reset(line, lineNumber);
+        compiled = setUp(M, lexer);
+        if (compiled != null) {
+            cache.put(line, compiled);
+        }
+    }
 
-        for (int i = 0; i < arrayForInsertRotors.length; i++) {
-            if (settingsHandler.hasNext()) {
-                String currNamey = settingsHandler.next();
-                arrayForInsertRotors[i] = currNamey;
+    /** Set M according to the settings line SETTINGS, which must have the
+     *  format specified in the assignment, or leave M unchanged if it is
+     *  wrong.  Allocates little but the rotor names, the setting and the
+     *  result unless the plugboard changes.  Returns the settings applied
+     *  if every rotor named exists, so that they do not depend on M's
+     *  previous rotors, and otherwise null. */
+    static CompiledSettings setUp(Machine M, Lexer settings) {
+        if (!settings.next()) {
+            throw settings.error("missing settings");
+        }
 
-            } else {
-                throw new EnigmaException("mistmatch setting size");
+        String[] names = new String[M.numRotors()];
+        for (int i = 0; i < names.length; i += 1) {
+            if (!settings.next()) {
+                throw settings.error("mistmatch setting size");
             }
+            names[i] = settings.string();
         }
 
-        M.insertRotors(arrayForInsertRotors);
-
-        if (!settingsHandler.hasNext()) {
-            throw new EnigmaException("missing a setting");
+        if (!settings.next()) {
+            throw settings.error("missing a setting");
+        }
+        String setting = settings.string();
+
+        settings.startCycles(M.alphabet());
+        int plugStart = -1, plugEnd = -1;
+        boolean simple = true;
+        while (settings.next()) {
+            if (plugStart < 0) {
+                plugStart = settings.start();
+            }
+            plugEnd = settings.end();
+            simple = simple && settings.addCycles(2);
         }
 
-        String settingtopass = settingsHandler.next();
-        M.setRotors(settingtopass);
-
-
-        if (settingsHandler.hasNext()) {
-            String plugBoardStringPass = "";
+        Permutation plugboard = M.plugboard();
+        if (!simple) {
+            plugboard = new Permutation(settings.string(plugStart, plugEnd),
+                                        M.alphabet());
+        } else if (plugboard == null
+                   || !plugboard.sameMapping(settings.cycles())) {
+            plugboard = new Permutation(settings.cycles().clone(),
+                                        M.alphabet());
+        }
+        CompiledSettings compiled = M.compile(names, setting, plugboard);
+        M.apply(compiled);
+        EnigmaMetrics.get().settingsApplied();
 
-            while (settingsHandler.hasNext()) {
-                String currentConcat = settingsHandler.next();
-                plugBoardStringPass =
-                        plugBoardStringPass + currentConcat;
+        for (int i = 0; i < names.length; i += 1) {
+            if (!M.getRotor(i).name().equals(names[i])) {
+                return null;
             }
-            Permutation needed =
-                    new Permutation(plugBoardStringPass, M.alphabet());
-            M.setPlugboard(needed);
+        }
+        return compiled;
+    }
 
-        } else {
-            String haveAnywaysPlug = "";
-            Permutation neededNot =
-                    new Permutation(haveAnywaysPlug, M.alphabet());
-            M.setPlugboard(neededNot);
+    /** Finish the section M is currently converting, if any, and start a
+     *  new one by setting M up according to SETTINGS, which is line LINE
+     *  of the input (0 if not known). */
+    private void startSection(Machine M, CharSequence settings, int line) {
+        endSection(M);
+        setUp(M, settings.toString(), line, _lexer, _settingsCache);
+        _sectionStart = System.nanoTime();
+    }
+
+    /** Finish the section M is currently converting, if any, publishing
+     *  its counts and latency to EnigmaMetrics. */
+    private void endSection(Machine M) {
+        M.publishMetrics();
+        if (_sectionStart != 0) {
+            EnigmaMetrics.get()
+                .sectionProcessed(System.nanoTime() - _sectionStart);
+            _sectionStart = 0;
         }
     }
 
@@ -271,20 +1095,42 @@ public final class Main {
         return _verbose;
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-
-        String[] stringprocess = msg.split("");
+    /** Print MSG on OUTPUT as one line, in groups of five (except that the
+     *  last group may have fewer letters) unless --raw was given. */
+    private static void printMessageLine(String msg, GroupedWriter output) {
+        try {
+            output.write(msg);
+            output.endLine();
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
 
-        for (int i = 0; i < stringprocess.length; i++) {
-            if ((i > 0) && (i % 5 == 0)) {
-                _output.print(" ");
-            }
-            _output.print(stringprocess[i]);
+    /** Return the error to report for EXCP, thrown by M while converting
+     *  a message line: that no settings line came before the message, if
+     *  M has no rotors inserted, and otherwise EXCP itself. */
+    private static EnigmaException messageError(Machine M,
+                                                EnigmaException excp) {
+        if (!M.hasRotors()) {
+            return error("process: no setting line given");
         }
-        _output.print("\n");
+        return excp;
+    }
 
+    /** Return a GroupedWriter on _output that groups letters as for
+     *  printMessageLine. */
+    private GroupedWriter groupedOutput() {
+        return new GroupedWriter(new OutputStreamWriter(_output,
+                Charset.defaultCharset()), _group);
+    }
+
+    /** Write out everything buffered in OUTPUT. */
+    private static void flush(GroupedWriter output) {
+        try {
+            output.flush();
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
     }
 
     /** Alphabet used in this machine. */
@@ -293,12 +1139,96 @@ public final class Main {
     /** Source of input messages. */
     private Scanner _input;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** Name of the input file, or null for the standard input. */
+    private String _inputName;
+
+    /** Name of the output file in --mmap mode. */
+    private String _outputName;
+
+    /** System.nanoTime() when the current section started, or 0 if no
+     *  section has started. */
+    private long _sectionStart;
+
+    /** Text of the machine configuration file. */
+    private String _config;
 
     /** File for encoded/decoded messages. */
     private PrintStream _output;
 
     /** True if --verbose specified. */
     private static boolean _verbose;
+
+    /** True if --stream specified. */
+    private static boolean _streaming;
+
+    /** True if --mmap specified. */
+    private static boolean _mapped;
+
+    /** True if --parallel specified. */
+    private static boolean _parallel;
+
+    /** Address given by --serve, or null. */
+    private static String _serveAddress;
+
+    /** True iff --compile was given. */
+    private static boolean _compiling;
+
+    /** Rotor states cached by each machine, as given by --cache, or 0
+     *  if it was not given. */
+    private static int _cacheCapacity;
+
+    /** Number of keys to print with --search, or 0 if not searching. */
+    private static int _searchKeep;
+
+    /** Letters in each printed group, or 0 if --raw was given. */
+    private static int _group = Main.GROUP;
+
+    /** Tokenizes settings lines. */
+    private final Lexer _lexer = new Lexer();
+
+    /** Compiled settings lines, shared by all my machines. */
+    private final SettingsCache _settingsCache = new SettingsCache();
+
+    /** Name of the configuration file. */
+    private String _configName;
+
+    /** Name of the image written by --compile. */
+    private String _imageName;
+
+    /** Tracer given to each machine configured, or null if not tracing. */
+    private static TraceWriter _tracer;
+
+    /** File opened by --trace, or null. */
+    private static OutputStream _traceFile;
+
+    /** Number of sections per worker thread that --parallel mode reads
+     *  ahead of the output. */
+    static final int MAX_PENDING = 4;
+
+    /** Size in bytes of each mapped window of the input and output files
+     *  in --mmap mode. */
+    static final long MAP_WINDOW = 1L << 26;
+
+    /** Most bytes that one character takes in a supported charset. */
+    private static final int MAX_CHAR_BYTES = 4;
+
+    /** Largest ASCII character value. */
+    private static final int MAX_ASCII = 0x7F;
+
+    /** Number of characters read or converted at a time in streaming
+     *  mode. */
+    static final int CHUNK = 1 << 16;
+
+    /** Number of letters in each printed group. */
+    static final int GROUP = 5;
+
+    /** Size of the output buffer of each section in --parallel mode. */
+    static final int SECTION_BUFFER = 1 << 10;
+
+    /** Milliseconds between progress reports in --search mode. */
+    static final long SEARCH_PROGRESS_INTERVAL = 1000;
+
+    /** States of processStream: at the start of a line, in a settings
+     *  line, and in a message line. */
+    private static final int LINE_START = 0, SETTINGS = 1, MESSAGE = 2;
 }
@@ -0,0 +1,264 @@
+package enigma;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Main class, run on temporary
+ *  configuration, input and output files in each of its modes.
+ *  @author Katrina Sharonin
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    /** The naval rotors as a configuration file. */
+    private static final String CONFIG = config();
+
+    /** Sections of messages, with a blank line and an unusual settings
+     *  line. */
+    private static final String MESSAGES =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "FROM HIS SHOULDER HIAWATHA\n"
+        + "TOOK THE CAMERA OF ROSEWOOD\n"
+        + "\n"
+        + "MADE OF SLIDING FOLDING ROSEWOOD\n"
+        + "  * C Gamma VI VII VIII ZZZZ (AB)\n"
+        + "NEATLY PUT IT ALL TOGETHER\n"
+        + "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "QVPQS OKOIL PUBKJ ZPISF XDW\n";
+
+    /** The output of converting MESSAGES. */
+    private static final String CONVERTED =
+        "QVPQS OKOIL PUBKJ ZPISF XDW\n"
+        + "BHCNS CXNUO AATZX SRCFY DGU\n"
+        + "\n"
+        + "FLPNX GXIXT YJUJR CAUGE UNCFM KUF\n"
+        + "ISGZV QEDXW NEXUH RNIZP TE\n"
+        + "FROMH ISSHO ULDER HIAWA THA\n";
+
+    /** The first five lines of MESSAGES, followed by a settings line
+     *  that repeats a rotor. */
+    private static final String BAD_SETTINGS =
+        MESSAGES.substring(0, MESSAGES.indexOf("  *"))
+        + "* B Beta III I I AXLE\n"
+        + "NEATLY PUT IT ALL TOGETHER\n";
+
+    /** The first two lines of MESSAGES, followed by a message with a
+     *  character not in the alphabet. */
+    private static final String BAD_CHARACTER =
+        MESSAGES.substring(0, MESSAGES.indexOf("TOOK"))
+        + "TOOK THE camera\n"
+        + "OF ROSEWOOD\n";
+
+    /** Copies of MESSAGES, each after a message line long enough that
+     *  the settings line starting the copy spans a boundary between the
+     *  chunks in which Main reads its input. */
+    private static final String LONG = longMessages();
+
+    @Test
+    public void testLines() throws IOException {
+        assertEquals(CONVERTED, convert(MESSAGES));
+        assertEquals(CONVERTED.substring(0, CONVERTED.indexOf("ISGZV"))
+                     + "Error: rotor I repeated",
+                     convert(BAD_SETTINGS));
+        assertEquals(CONVERTED.substring(0, CONVERTED.indexOf("BHCNS"))
+                     + "Error: character c not in alphabet",
+                     convert(BAD_CHARACTER));
+    }
+
+    @Test
+    public void testStream() throws IOException {
+        assertEquals(convert(MESSAGES), convert(MESSAGES, "--stream"));
+        assertEquals(convert(BAD_SETTINGS),
+                     convert(BAD_SETTINGS, "--stream"));
+        assertEquals(CONVERTED.substring(0, CONVERTED.indexOf("BHCNS"))
+                     + "BHCNS CX"
+                     + "Error: character c not in alphabet",
+                     convert(BAD_CHARACTER, "--stream"));
+    }
+
+    @Test
+    public void testMapped() throws IOException {
+        assertEquals(convert(MESSAGES), convert(MESSAGES, "--mmap"));
+        assertEquals(convert(BAD_SETTINGS), convert(BAD_SETTINGS, "--mmap"));
+        assertEquals(convert(BAD_CHARACTER, "--stream"),
+                     convert(BAD_CHARACTER, "--mmap"));
+    }
+
+    @Test
+    public void testParallel() throws IOException {
+        for (String input : new String[] {
+                MESSAGES, BAD_SETTINGS, BAD_CHARACTER, LONG,
+                "HELLO WORLD\n" + MESSAGES, "\n" + MESSAGES }) {
+            assertEquals(convert(input), convert(input, "--parallel"));
+        }
+    }
+
+    @Test
+    public void testParallelTrace() throws IOException {
+        String input = MESSAGES + BAD_CHARACTER;
+        String expected = trace(input);
+        String letters =
+            convert(input, "--stream").replaceAll("\\s|Error.*", "");
+        assertEquals(letters.length(),
+                     expected.split(System.lineSeparator()).length);
+        assertEquals(expected, trace(input, "--parallel"));
+    }
+
+    @Test
+    public void testCache() throws IOException {
+        EnigmaMetrics metrics = EnigmaMetrics.get();
+        long misses = metrics.getCacheMisses();
+        assertEquals(CONVERTED, convert(MESSAGES, "--cache=1024"));
+        assertTrue(metrics.getCacheMisses() > misses);
+        assertEquals(CONVERTED, convert(MESSAGES, "--stream", "--cache=2"));
+    }
+
+    @Test
+    public void testNoSettings() throws IOException {
+        String input = "\nFROM HIS SHOULDER\n" + MESSAGES;
+        for (String mode : new String[] {
+                "--stream", "--mmap", "--parallel" }) {
+            assertEquals(convert(input), convert(input, mode));
+        }
+        assertEquals("\nError: process: no setting line given",
+                     convert(input));
+    }
+
+    @Test
+    public void testSearchUsage() throws IOException {
+        for (String mode : new String[] {
+                "--stream", "--mmap", "--parallel", "--serve=0",
+                "--compile" }) {
+            String result = convert(MESSAGES, "--search=2", mode);
+            assertTrue(mode + ": " + result,
+                       result.startsWith("Error: Usage: "));
+        }
+    }
+
+    @Test
+    public void testServeUsage() throws IOException {
+        File config = temp(CONFIG);
+        File trace = temp("");
+        try {
+            for (String option : new String[] {
+                    "--verbose", "--trace=" + trace.getPath() }) {
+                try {
+                    Main.run("--serve=0", option, config.getPath());
+                    fail("served with " + option);
+                } catch (EnigmaException excp) {
+                    assertTrue(option + ": " + excp.getMessage(),
+                               excp.getMessage().startsWith("Usage: "));
+                }
+            }
+        } finally {
+            config.delete();
+            trace.delete();
+        }
+    }
+
+    @Test
+    public void testChunkBoundaries() throws IOException {
+        String expected = convert(LONG);
+        assertEquals(expected, convert(LONG, "--stream"));
+        assertEquals(expected, convert(LONG, "--mmap"));
+    }
+
+    /** Return the text of a configuration file with all of TestUtils'
+     *  naval rotors, in 5 slots with 3 pawls. */
+    private static String config() {
+        String[] rotors = {
+            "I MQ", "II ME", "III MV", "IV MJ", "V MZ", "VI MZM",
+            "VII MZM", "VIII MZM", "Beta N", "Gamma N", "B R", "C R"
+        };
+        StringBuilder config =
+            new StringBuilder(TestUtils.UPPER_STRING + "\n5 3\n");
+        for (String rotor : rotors) {
+            String name = rotor.substring(0, rotor.indexOf(' '));
+            config.append(rotor).append(' ')
+                .append(TestUtils.NAVALA.get(name)).append('\n');
+        }
+        return config.toString();
+    }
+
+    /** Return the text of LONG. */
+    private static String longMessages() {
+        StringBuilder text = new StringBuilder(MESSAGES);
+        for (int k = 1; k <= 3; k += 1) {
+            while (text.length() < k * Main.CHUNK - 2 * Main.GROUP) {
+                text.append(TestUtils.UPPER_STRING.charAt(text.length()
+                            % TestUtils.UPPER_STRING.length()));
+            }
+            text.append('\n').append(MESSAGES);
+        }
+        return text.toString();
+    }
+
+    /** Return what Main, given OPTIONS, writes on converting INPUT with
+     *  CONFIG: its output, followed by "Error: " and the message if it
+     *  reports an error. */
+    private static String convert(String input, String... options)
+        throws IOException {
+        File config = temp(CONFIG);
+        File in = temp(input);
+        File out = temp("");
+        try {
+            ArrayList<String> args = new ArrayList<>(Arrays.asList(options));
+            args.add(config.getPath());
+            args.add(in.getPath());
+            args.add(out.getPath());
+            String error = "";
+            try {
+                Main.run(args.toArray(new String[0]));
+            } catch (EnigmaException excp) {
+                error = "Error: " + excp.getMessage();
+            }
+            return new String(Files.readAllBytes(out.toPath()),
+                              StandardCharsets.US_ASCII) + error;
+        } finally {
+            config.delete();
+            in.delete();
+            out.delete();
+        }
+    }
+
+    /** Return the trace that Main, given OPTIONS, writes with --trace on
+     *  converting INPUT, as text. */
+    private static String trace(String input, String... options)
+        throws IOException {
+        File trace = temp("");
+        try {
+            String[] args = Arrays.copyOf(options, options.length + 1);
+            args[options.length] = "--trace=" + trace.getPath();
+            convert(input, args);
+            StringBuilder text = new StringBuilder();
+            TraceDecoder.decode(new DataInputStream(
+                new FileInputStream(trace)), text);
+            return text.toString();
+        } finally {
+            trace.delete();
+        }
+    }
+
+    /** Return a new temporary file containing TEXT. */
+    private static File temp(String text) throws IOException {
+        File file = File.createTempFile("main", ".txt");
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+}
@@ -9,8 +9,6 @@ class MovingRotor extends Rotor {
 
     /** A rotor named NAME whose permutation in its default setting is
      *  PERM, and whose notches are at the positions indicated in NOTCHES.
-     *  The Rotor is initally in its 0 setting (first character of its
-     *  alphabet).
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
@@ -23,28 +21,14 @@ class MovingRotor extends Rotor {
 
     }
 
-    @Override
-    void advance() {
-        int advancement = (setting() + 1) % alphabet().size();
-        this.set(advancement);
-
-    }
-
     @Override
     String notches() {
         return _notches;
     }
 
     @Override
-    boolean atNotch() {
-
-
-        int settingA = setting() % (alphabet().size());
-        boolean alternate = notches().contains(String.valueOf
-                (super.permutation().alphabet().toChar(settingA)));
-
-        return alternate;
-
+    boolean atNotch(int posn) {
+        return _notches.indexOf(alphabet().toChar(posn)) >= 0;
     }
 
 
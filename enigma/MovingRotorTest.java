@@ -21,12 +21,13 @@ public class MovingRotorTest {
     /* ***** TESTING UTILITIES ***** */
 
     private Rotor rotor;
+    private int setting;
     private String alpha = UPPER_STRING;
 
     /** Check that rotor has an alphabet whose size is that of
-     *  FROMALPHA and TOALPHA and that maps each character of
-     *  FROMALPHA to the corresponding character of FROMALPHA, and
-     *  vice-versa. TESTID is used in error messages. */
+     *  FROMALPHA and TOALPHA and that, at the setting in setting, maps
+     *  each character of FROMALPHA to the corresponding character of
+     *  FROMALPHA, and vice-versa. TESTID is used in error messages. */
     private void checkRotor(String testId,
                             String fromAlpha, String toAlpha) {
         int N = fromAlpha.length();
@@ -35,9 +36,9 @@ public class MovingRotorTest {
             char c = fromAlpha.charAt(i), e = toAlpha.charAt(i);
             int ci = alpha.indexOf(c), ei = alpha.indexOf(e);
             assertEquals(msg(testId, "wrong translation of %d (%c)", ci, c),
-                         ei, rotor.convertForward(ci));
+                         ei, rotor.convertForward(ci, setting));
             assertEquals(msg(testId, "wrong inverse of %d (%c)", ei, e),
-                         ci, rotor.convertBackward(ei));
+                         ci, rotor.convertBackward(ei, setting));
         }
     }
 
@@ -60,14 +61,14 @@ public class MovingRotorTest {
     @Test
     public void checkRotorAdvance() {
         setRotor("I", NAVALA, "");
-        rotor.advance();
+        setting = 1;
         checkRotor("Rotor I advanced", UPPER_STRING, NAVALB_MAP.get("I"));
     }
 
     @Test
     public void checkRotorSet() {
         setRotor("I", NAVALA, "");
-        rotor.set(25);
+        setting = 25;
         checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 
@@ -76,11 +77,11 @@ public class MovingRotorTest {
         setRotor("I", NAVALA, "");
         checkRotor("Rotor I (A)", UPPER_STRING, NAVALA_MAP.get("I"));
         assertEquals(alpha.indexOf('P'),
-                rotor.convertForward(alpha.indexOf('T')));
+                rotor.convertForward(alpha.indexOf('T'), 0));
         assertEquals(alpha.indexOf('A'),
-                rotor.convertForward(alpha.indexOf('U')));
+                rotor.convertForward(alpha.indexOf('U'), 0));
         assertEquals(alpha.indexOf('S'),
-                rotor.convertForward(alpha.indexOf('S')));
+                rotor.convertForward(alpha.indexOf('S'), 0));
     }
 
     @Test
@@ -88,11 +89,28 @@ public class MovingRotorTest {
         setRotor("I", NAVALA, "");
         checkRotor("Rotor I (A)", UPPER_STRING, NAVALA_MAP.get("I"));
         assertEquals(alpha.indexOf('T'),
-                rotor.convertBackward(alpha.indexOf('P')));
+                rotor.convertBackward(alpha.indexOf('P'), 0));
         assertEquals(alpha.indexOf('U'),
-                rotor.convertBackward(alpha.indexOf('A')));
+                rotor.convertBackward(alpha.indexOf('A'), 0));
         assertEquals(alpha.indexOf('S'),
-                rotor.convertBackward(alpha.indexOf('S')));
+                rotor.convertBackward(alpha.indexOf('S'), 0));
+    }
+
+    @Test
+    public void checkArithmeticMatchesPrecomputed() {
+        setRotor("V", NAVALA, "Z");
+        Rotor other = new Rotor("V",
+                new Permutation(NAVALA.get("V"), UPPER), false);
+        assertTrue(rotor.precomputed());
+        assertFalse(other.precomputed());
+        for (int posn = 0; posn < rotor.size(); posn += 1) {
+            for (int p = 0; p < rotor.size(); p += 1) {
+                assertEquals(other.convertForward(p, posn),
+                        rotor.convertForward(p, posn));
+                assertEquals(other.convertBackward(p, posn),
+                        rotor.convertBackward(p, posn));
+            }
+        }
     }
 
     @Test
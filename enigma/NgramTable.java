@@ -0,0 +1,261 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import static enigma.EnigmaException.*;
+
+/** Log-probabilities of the n-grams (bigrams, trigrams, quadgrams, ...)
+ *  of an alphabet, for scoring candidate decryptions.  The score of
+ *  n-gram c1...cn is at index ((c1 * size + c2) * size + ...) + cn of a
+ *  flat array of floats, where c1 ... cn are indices in the alphabet and
+ *  size is its size.
+ *
+ *  A table is built from counts of n-grams in some text and saved as a
+ *  big-endian file of
+ *      int    MAGIC, int VERSION, int N
+ *      int    length of the alphabet, then its chars
+ *      float  size^N scores
+ *  which load() maps into memory rather than reading.
+ *  @author Katrina Sharonin
+ */
+public final class NgramTable {
+
+    /** First field of every table file ("NGRM"). */
+    static final int MAGIC = 0x4E47524D;
+
+    /** Version of the file layout. */
+    static final int VERSION = 1;
+
+    /** A table of N-grams of ALPHABET whose scores are SCORES. */
+    private NgramTable(Alphabet alphabet, int n, FloatBuffer scores) {
+        _alphabet = alphabet;
+        _n = n;
+        _scores = scores;
+    }
+
+    /** Return a table of N-grams of ALPHABET from COUNTS, which has lines
+     *  of the form "NGRAM COUNT".  An n-gram that does not appear gets a
+     *  score a little below that of one seen once. */
+    static NgramTable fromCounts(Alphabet alphabet, int n, Reader counts) {
+        double[] tally = new double[entries(alphabet, n)];
+        Lexer lexer = new Lexer();
+        int lineNumber = 0;
+        try {
+            BufferedReader lines = new BufferedReader(counts);
+            for (String line = lines.readLine(); line != null;
+                 line = lines.readLine()) {
+                lineNumber += 1;
+                lexer.reset(line, lineNumber);
+                if (!lexer.next()) {
+                    continue;
+                }
+                if (lexer.length() != n) {
+                    throw lexer.error("expected a %d-gram", n);
+                }
+                int index = 0;
+                for (int k = 0; k < n; k += 1) {
+                    int c = alphabet.toInt(lexer.charAt(k));
+                    if (c == Alphabet.NOT_FOUND) {
+                        throw lexer.error("character %c not in alphabet",
+                                          lexer.charAt(k));
+                    }
+                    index = index * alphabet.size() + c;
+                }
+                if (!lexer.next() || !lexer.isInt()
+                    || lexer.intValue() < 0) {
+                    throw lexer.error("expected a count");
+                }
+                tally[index] += lexer.intValue();
+            }
+        } catch (IOException excp) {
+            throw error("could not read n-gram counts: %s",
+                        excp.getMessage());
+        }
+        return fromTally(alphabet, n, tally);
+    }
+
+    /** Return a table of the N-grams of ALPHABET in TEXT, skipping
+     *  characters not in ALPHABET. */
+    static NgramTable fromText(Alphabet alphabet, int n, CharSequence text) {
+        double[] tally = new double[entries(alphabet, n)];
+        int wrap = tally.length / alphabet.size();
+        int index = 0;
+        int seen = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            int c = alphabet.toInt(text.charAt(i));
+            if (c != Alphabet.NOT_FOUND) {
+                index = (index % wrap) * alphabet.size() + c;
+                seen += 1;
+                if (seen >= n) {
+                    tally[index] += 1;
+                }
+            }
+        }
+        return fromTally(alphabet, n, tally);
+    }
+
+    /** Return the table of N-grams of ALPHABET whose counts are TALLY. */
+    private static NgramTable fromTally(Alphabet alphabet, int n,
+                                        double[] tally) {
+        double total = 0;
+        for (double count : tally) {
+            total += count;
+        }
+        if (total == 0) {
+            throw error("no n-grams counted");
+        }
+        float floor = (float) Math.log10(UNSEEN / total);
+        float[] scores = new float[tally.length];
+        for (int i = 0; i < tally.length; i += 1) {
+            scores[i] = tally[i] == 0 ? floor
+                : (float) Math.log10(tally[i] / total);
+        }
+        return new NgramTable(alphabet, n, FloatBuffer.wrap(scores));
+    }
+
+    /** Return the number of N-grams of ALPHABET, checking that a table of
+     *  them is not too large. */
+    private static int entries(Alphabet alphabet, int n) {
+        if (n < 1) {
+            throw error("n-grams must have at least one letter");
+        }
+        long entries = 1;
+        for (int k = 0; k < n; k += 1) {
+            entries *= alphabet.size();
+            if (entries > MAX_ENTRIES) {
+                throw error("too many %d-grams", n);
+            }
+        }
+        return (int) entries;
+    }
+
+    /** Write me to the file named NAME.  The table is written to a
+     *  temporary file first, so that readers never see part of one. */
+    void write(String name) {
+        Path target = Paths.get(name);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        int size = _alphabet.size();
+        ByteBuffer buf = ByteBuffer.allocate(
+            Integer.BYTES * 4 + Character.BYTES * size
+            + Float.BYTES * _scores.limit());
+        buf.putInt(MAGIC).putInt(VERSION).putInt(_n).putInt(size);
+        for (int i = 0; i < size; i += 1) {
+            buf.putChar(_alphabet.toChar(i));
+        }
+        for (int i = 0; i < _scores.limit(); i += 1) {
+            buf.putFloat(_scores.get(i));
+        }
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                out.write(buf.array());
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                /* Ignore: the write has already failed. */
+            }
+            throw error("could not write %s: %s", name, excp.getMessage());
+        }
+    }
+
+    /** Return the table in the file named NAME, mapped into memory. */
+    static NgramTable load(String name) {
+        ByteBuffer image;
+        try (FileChannel channel = FileChannel.open(Paths.get(name))) {
+            image = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                channel.size());
+        } catch (IOException excp) {
+            throw error("could not read %s: %s", name, excp.getMessage());
+        }
+        try {
+            if (image.getInt() != MAGIC || image.getInt() != VERSION) {
+                throw error("%s is not an n-gram table", name);
+            }
+            int n = image.getInt();
+            int length = image.getInt();
+            if (length < 0 || length > image.remaining() / Character.BYTES) {
+                throw new BufferUnderflowException();
+            }
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i += 1) {
+                chars[i] = image.getChar();
+            }
+            Alphabet alphabet = new Alphabet(new String(chars));
+            int entries = entries(alphabet, n);
+            if (image.remaining() != Float.BYTES * entries) {
+                throw error("%s has the wrong size", name);
+            }
+            return new NgramTable(alphabet, n,
+                                  image.slice().asFloatBuffer());
+        } catch (BufferUnderflowException | IllegalArgumentException excp) {
+            throw error("%s is truncated or malformed", name);
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of letters in each of my n-grams. */
+    int order() {
+        return _n;
+    }
+
+    /** Return the score of the n-gram with index INDEX. */
+    float score(int index) {
+        return _scores.get(index);
+    }
+
+    /** Convert the n-gram counts in ARGS[2] (lines of the form "NGRAM
+     *  COUNT") for the alphabet ARGS[0] and n = ARGS[1] into a table in
+     *  the file named ARGS[3].  Exits with code 1 on error. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 4 || !args[1].matches("[1-9]")) {
+                throw error("Usage: java enigma.NgramTable ALPHABET N "
+                            + "COUNTS TABLE");
+            }
+            try (Reader counts = Files.newBufferedReader(
+                     Paths.get(args[2]))) {
+                fromCounts(new Alphabet(args[0]), Integer.parseInt(args[1]),
+                           counts).write(args[3]);
+            } catch (IOException excp) {
+                throw error("could not read %s: %s", args[2],
+                            excp.getMessage());
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Largest number of n-grams in a table. */
+    static final int MAX_ENTRIES = 1 << 26;
+
+    /** Count given to n-grams that were never seen. */
+    private static final double UNSEEN = 0.01;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** Number of letters in each n-gram. */
+    private final int _n;
+    /** Score of each n-gram, by index. */
+    private final FloatBuffer _scores;
+}
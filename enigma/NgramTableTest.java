@@ -0,0 +1,63 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the NgramTable class.
+ *  @author Katrina Sharonin
+ */
+public class NgramTableTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    private static final Alphabet ABC = new Alphabet("ABC");
+
+    @Test
+    public void testFromCounts() {
+        NgramTable table = NgramTable.fromCounts(ABC, 2,
+            new StringReader("AB 6\n\nCA 2\nAB 2\n"));
+        assertEquals(2, table.order());
+        assertEquals(Math.log10(0.8), table.score(0 * 3 + 1), 1e-6);
+        assertEquals(Math.log10(0.2), table.score(2 * 3 + 0), 1e-6);
+        assertTrue(table.score(2 * 3 + 2) < table.score(2 * 3 + 0));
+    }
+
+    @Test
+    public void testFromText() {
+        NgramTable table = NgramTable.fromText(ABC, 3, "ABC AB-CA");
+        assertEquals(Math.log10(2.0 / 5), table.score(0 * 9 + 1 * 3 + 2),
+                     1e-6);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadCounts() {
+        NgramTable.fromCounts(ABC, 2, new StringReader("ABC 1\n"));
+    }
+
+    @Test
+    public void testWriteLoad() throws IOException {
+        NgramTable table = NgramTable.fromText(ABC, 2, "ABCABBACCA");
+        File file = File.createTempFile("ngrams", ".tbl");
+        try {
+            table.write(file.getPath());
+            NgramTable loaded = NgramTable.load(file.getPath());
+            assertEquals(2, loaded.order());
+            assertEquals('C', loaded.alphabet().toChar(2));
+            for (int i = 0; i < 9; i += 1) {
+                assertEquals(table.score(i), loaded.score(i), 0);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package enigma;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -77,6 +78,67 @@ class Permutation {
 
         }
 
+        buildTables();
+    }
+
+    /** Set this Permutation to the one taking each index I of ALPHABET to
+     *  FORWARD[I], as saved in a ConfigImage.  FORWARD must be a
+     *  permutation of 0 .. ALPHABET.size() - 1; it is not copied. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        _alphabet = alphabet;
+        int size = alphabet.size();
+        if (forward.length != size) {
+            throw error("permutation table has wrong size");
+        }
+        _forward = forward;
+        _inverse = new int[size];
+        Arrays.fill(_inverse, Alphabet.NOT_FOUND);
+        for (int i = 0; i < size; i += 1) {
+            int to = forward[i];
+            if (to < 0 || to >= size || _inverse[to] != Alphabet.NOT_FOUND) {
+                throw error("permutation table is not a permutation");
+            }
+            _inverse[to] = i;
+        }
+        _cycles = new ArrayList<ArrayList<Character>>();
+        StringBuilder cycles = new StringBuilder();
+        boolean[] seen = new boolean[size];
+        for (int i = 0; i < size; i += 1) {
+            if (!seen[i] && forward[i] != i) {
+                ArrayList<Character> cycle = new ArrayList<>();
+                for (int j = i; !seen[j]; j = forward[j]) {
+                    seen[j] = true;
+                    cycle.add(alphabet.toChar(j));
+                    cycles.append(alphabet.toChar(j));
+                }
+                _cycles.add(cycle);
+            }
+        }
+        _stringcycles = cycles.toString();
+    }
+
+    /** Fill in _forward and _inverse from the cycles in _cycles, so that
+     *  permute and invert become a single array load.  Characters in no
+     *  cycle map to themselves. */
+    private void buildTables() {
+        int size = _alphabet.size();
+        _forward = new int[size];
+        _inverse = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            _forward[i] = i;
+            _inverse[i] = i;
+        }
+        for (ArrayList<Character> cycle : _cycles) {
+            for (int j = 0; j < cycle.size(); j += 1) {
+                int from = _alphabet.toInt(cycle.get(j));
+                int to = _alphabet.toInt(cycle.get((j + 1) % cycle.size()));
+                if (from == Alphabet.NOT_FOUND || to == Alphabet.NOT_FOUND) {
+                    throw error("character in cycle not in alphabet");
+                }
+                _forward[from] = to;
+                _inverse[to] = from;
+            }
+        }
     }
 
     /** Add the cycle c0->c1->...->cm->c0
@@ -119,112 +181,57 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-
-        p = wrap(p);
-        if (p >= _alphabet.size()) {
-            throw new EnigmaException("out of bounds +");
-
-        }
-
-        char applyTo = _alphabet.toChar(p);
-
-
-        for (int i = 0; i < _cycles.size(); i++) {
-            for (int j = 0; j < _cycles.get(i).size(); j++) {
-                if (_cycles.get(i).get(j).equals(applyTo)) {
-
-                    if (j + 1 >= _cycles.get(i).size()) {
-                        applyTo = _cycles.get(i).get(0);
-                    } else {
-                        applyTo = _cycles.get(i).get(j + 1);
-                    }
-
-                    int permutedIndex = _alphabet.toInt(applyTo);
-                    return permutedIndex;
-
-                }
-
-            }
-        }
-        return p;
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-
-        c = wrap(c);
-
-        if (c >= _alphabet.size()) {
-            throw new EnigmaException("out of bounds");
-
-        }
-
-        char applyToy = _alphabet.toChar(c);
-
-
-        for (int i = 0; i < _cycles.size(); i++) {
-            for (int j = 0; j < _cycles.get(i).size(); j++) {
-                if (_cycles.get(i).get(j).equals(applyToy)) {
-                    if (j - 1 < 0) {
-                        applyToy = _cycles.get(i).get
-                                (_cycles.get(i).size() - 1);
-                    } else {
-                        applyToy = _cycles.get(i).get(j - 1);
-                    }
-
-                    int permutedIndex = _alphabet.toInt(applyToy);
-                    return permutedIndex;
-
-                }
-
-            }
-        }
-        return c;
-
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-
-        if (!_alphabet.contains(p)) {
+        int index = _alphabet.toInt(p);
+        if (index == Alphabet.NOT_FOUND) {
             throw new EnigmaException("character dne in the given alphabet");
         }
-
-        int transformed = _alphabet.toInt(p);
-        int result = permute(transformed);
-        char changedResult = _alphabet.toChar(result);
-        return changedResult;
+        return _alphabet.toChar(_forward[index]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        if (!_alphabet.contains(c)) {
+        int index = _alphabet.toInt(c);
+        if (index == Alphabet.NOT_FOUND) {
             throw new EnigmaException("char DNE");
         }
+        return _alphabet.toChar(_inverse[index]);
+    }
 
-        for (int i = 0; i < _cycles.size(); i++) {
-            for (int j = 0; j < _cycles.get(i).size(); j++) {
-
-                if (_cycles.get(i).get(j).equals(c)) {
-                    char getcharwantedc;
-
-                    if (j - 1 < 0) {
-                        getcharwantedc =
-                                _cycles.get(i).get(_cycles.get(i).size() - 1);
-                    } else {
-                        getcharwantedc =
-                                _cycles.get(i).get(j - 1);
-                    }
+    /** Return true iff OTHER maps every index of my alphabet exactly as
+     *  I do. */
+    boolean sameMapping(Permutation other) {
+        return other.alphabet() == _alphabet
+                && Arrays.equals(_forward, other._forward);
+    }
 
-                    return getcharwantedc;
+    /** Return true iff I take each index I of my alphabet to
+     *  FORWARD[I]. */
+    boolean sameMapping(int[] forward) {
+        return Arrays.equals(_forward, forward);
+    }
 
-                }
-            }
-        }
+    /** Return true iff OBJ is a Permutation with the same mapping of the
+     *  same alphabet as mine. */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Permutation && sameMapping((Permutation) obj);
+    }
 
-        return c;
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_forward);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -247,4 +254,10 @@ class Permutation {
 
     /** String form of cycles. */
     private String _stringcycles;
+
+    /** Index that each index of my alphabet maps to. */
+    private int[] _forward;
+
+    /** Index that maps to each index of my alphabet; inverse of _forward. */
+    private int[] _inverse;
 }
@@ -52,6 +52,19 @@ public class PermutationTest {
     }
 
 
+    @Test
+    public void checkNavalA() {
+        for (String name : NAVALA_MAP.keySet()) {
+            perm = new Permutation(NAVALA.get(name), UPPER);
+            checkPerm(name, UPPER_STRING, NAVALA_MAP.get(name));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testCycleNotInAlphabet() {
+        new Permutation("(AZ)", new Alphabet("ABC"));
+    }
+
     @Test
     public void moreCases() {
         Alphabet shared = new Alphabet("BVCIASD");
@@ -0,0 +1,323 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** Recovery of the plugboard of a message whose rotor order and start
+ *  positions are known, by hill-climbing from random plugboards.
+ *
+ *  With the rotors fixed, letter t of the message is decrypted by
+ *  P(R_t(P(c_t))), where P is the plugboard and R_t the permutation of
+ *  the rotors and reflector at that letter.  The R_t are computed once,
+ *  as a flat table, and each climb holds P as an array that it changes
+ *  two or four entries at a time and changes back if the result scores
+ *  worse.  So evaluating a plugboard is a pass over the message doing
+ *  three array loads per letter and one n-gram lookup, with no
+ *  allocation.  Climbs from different random starts run concurrently.
+ *  @author Katrina Sharonin
+ */
+final class PlugboardSolver {
+
+    /** A solver scoring decryptions by TABLE, and trying plugboards with
+     *  at most MAXPAIRS pairs. */
+    PlugboardSolver(NgramTable table, int maxPairs) {
+        if (maxPairs < 0) {
+            throw error("maximum number of pairs must be >= 0");
+        }
+        _table = table;
+        _alphabet = table.alphabet();
+        _size = _alphabet.size();
+        _maxPairs = Math.min(maxPairs, _size / 2);
+        int wrap = 1;
+        for (int k = 1; k < table.order(); k += 1) {
+            wrap *= _size;
+        }
+        _wrap = wrap;
+    }
+
+    /** Return the best plugboard found for CIPHERTEXT, whose whitespace
+     *  is ignored, on MACHINE with its rotors as they are now, after
+     *  RESTARTS climbs from random plugboards chosen using SEED, run on
+     *  POOL.  MACHINE is not changed. */
+    Solution solve(Machine machine, CharSequence ciphertext, int restarts,
+                   long seed, ForkJoinPool pool) {
+        if (!sameLetters(machine.alphabet())) {
+            throw error("n-gram table is for a different alphabet");
+        }
+        int[] letters = letters(ciphertext);
+        int[] rotors = rotorTable(machine, letters.length);
+        _best = null;
+        _evaluations.reset();
+        ArrayList<Climb> climbs = new ArrayList<>();
+        for (int r = 0; r < restarts; r += 1) {
+            climbs.add(new Climb(letters, rotors, seed + r));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(climbs);
+            }
+        });
+        if (_best == null) {
+            throw error("no restarts");
+        }
+        return _best;
+    }
+
+    /** Return the number of plugboards scored by the current or last
+     *  call to solve(). */
+    long evaluations() {
+        return _evaluations.sum();
+    }
+
+    /** Return true iff ALPHA has the same letters, in the same order, as
+     *  my alphabet. */
+    private boolean sameLetters(Alphabet alpha) {
+        if (alpha.size() != _size) {
+            return false;
+        }
+        for (int i = 0; i < _size; i += 1) {
+            if (alpha.toChar(i) != _alphabet.toChar(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the indices of the letters of MSG, skipping whitespace. */
+    private int[] letters(CharSequence msg) {
+        int[] result = new int[msg.length()];
+        int n = 0;
+        for (int i = 0; i < msg.length(); i += 1) {
+            char ch = msg.charAt(i);
+            if (!Machine.isWhitespace(ch)) {
+                result[n] = _alphabet.toInt(ch);
+                if (result[n] == Alphabet.NOT_FOUND) {
+                    throw error("character %c not in alphabet", ch);
+                }
+                n += 1;
+            }
+        }
+        if (n < _table.order()) {
+            throw error("ciphertext too short to score");
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return the permutations of MACHINE's rotors and reflector for each
+     *  of the next N letters it converts, without its plugboard: entry
+     *  t * size + c is the conversion of c at letter t. */
+    private int[] rotorTable(Machine machine, int n) {
+        int slots = machine.numRotors();
+        ArrayList<Rotor> lineup = new ArrayList<>();
+        for (int i = 0; i < slots; i += 1) {
+            lineup.add(machine.getRotor(i));
+        }
+        Stepper stepper = new Stepper(lineup, _size);
+        int[] posns = machine.settings();
+        int[] table = new int[n * _size];
+        for (int t = 0; t < n; t += 1) {
+            stepper.step(posns);
+            for (int c = 0; c < _size; c += 1) {
+                int e = c;
+                for (int i = slots - 1; i >= 0; i -= 1) {
+                    e = lineup.get(i).convertForward(e, posns[i]);
+                }
+                for (int i = 1; i < slots; i += 1) {
+                    e = lineup.get(i).convertBackward(e, posns[i]);
+                }
+                table[t * _size + c] = e;
+            }
+        }
+        return table;
+    }
+
+    /** Record PLUGS, which scored SCORE, if it is the best so far. */
+    private synchronized void offer(int[] plugs, double score) {
+        if (_best == null || score > _best.score()) {
+            _best = new Solution(new Permutation(plugs.clone(), _alphabet),
+                                 score);
+        }
+    }
+
+    /** One hill-climb from a random plugboard. */
+    private class Climb extends RecursiveAction {
+
+        /** A climb for the ciphertext LETTERS, whose rotor permutations
+         *  are ROTORS, from a plugboard chosen using SEED. */
+        Climb(int[] letters, int[] rotors, long seed) {
+            _letters = letters;
+            _rotors = rotors;
+            _seed = seed;
+        }
+
+        @Override
+        protected void compute() {
+            Random random = new Random(_seed);
+            _out = new int[_letters.length];
+            _plugs = new int[_size];
+            for (int c = 0; c < _size; c += 1) {
+                _plugs[c] = c;
+            }
+            int pairs = randomPairs(random);
+            double best = evaluate();
+            long evaluations = 1;
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int i = 0; i < _size; i += 1) {
+                    for (int j = i + 1; j < _size; j += 1) {
+                        int a = _plugs[i], b = _plugs[j];
+                        int change = pairChange(i, j, a, b);
+                        if (pairs + change > _maxPairs) {
+                            continue;
+                        }
+                        setPair(i, j, a, b);
+                        double score = evaluate();
+                        evaluations += 1;
+                        if (score > best + EPSILON) {
+                            best = score;
+                            pairs += change;
+                            improved = true;
+                        } else {
+                            _plugs[i] = a;
+                            _plugs[j] = b;
+                            _plugs[a] = i;
+                            _plugs[b] = j;
+                        }
+                    }
+                }
+            }
+            _evaluations.add(evaluations);
+            offer(_plugs, best);
+        }
+
+        /** Plug up to _maxPairs random pairs into _plugs, using RANDOM,
+         *  and return the number plugged. */
+        private int randomPairs(Random random) {
+            int pairs = random.nextInt(_maxPairs + 1);
+            for (int k = 0; k < pairs; k += 1) {
+                int i, j;
+                do {
+                    i = random.nextInt(_size);
+                    j = random.nextInt(_size);
+                } while (i == j || _plugs[i] != i || _plugs[j] != j);
+                _plugs[i] = j;
+                _plugs[j] = i;
+            }
+            return pairs;
+        }
+
+        /** Return the change in the number of pairs that setPair(I, J, A,
+         *  B) makes, where A and B are the letters now plugged to I and
+         *  J. */
+        private int pairChange(int i, int j, int a, int b) {
+            if (a == j) {
+                return -1;
+            }
+            return 1 - (a != i ? 1 : 0) - (b != j ? 1 : 0);
+        }
+
+        /** Unplug I and J if they are plugged together; otherwise unplug
+         *  them from their partners A and B and plug them together.  The
+         *  change is undone by setting _plugs[I], _plugs[J], _plugs[A] and
+         *  _plugs[B] back to A, B, I and J. */
+        private void setPair(int i, int j, int a, int b) {
+            if (a == j) {
+                _plugs[i] = i;
+                _plugs[j] = j;
+            } else {
+                _plugs[a] = a;
+                _plugs[b] = b;
+                _plugs[i] = j;
+                _plugs[j] = i;
+            }
+        }
+
+        /** Return the n-gram score of the decryption of _letters with
+         *  plugboard _plugs. */
+        private double evaluate() {
+            int[] plugs = _plugs;
+            int[] rotors = _rotors;
+            int size = _size;
+            int wrap = _wrap;
+            int[] out = _out;
+            int last = _table.order() - 1;
+            int index = 0;
+            for (int t = 0; t < last; t += 1) {
+                out[t] = plugs[rotors[t * size + plugs[_letters[t]]]];
+                index = index * size + out[t];
+            }
+            double score = 0;
+            for (int t = last; t < _letters.length; t += 1) {
+                out[t] = plugs[rotors[t * size + plugs[_letters[t]]]];
+                index = index * size + out[t];
+                score += _table.score(index);
+                index -= out[t - last] * wrap;
+            }
+            return score;
+        }
+
+        /** Letters of the ciphertext. */
+        private final int[] _letters;
+        /** Rotor permutations at each letter, as from rotorTable. */
+        private final int[] _rotors;
+        /** Seed of the starting plugboard. */
+        private final long _seed;
+        /** The plugboard being climbed, as the letter each letter is
+         *  plugged to. */
+        private int[] _plugs;
+        /** The decryption being scored. */
+        private int[] _out;
+    }
+
+    /** A plugboard found by solve(), with its score. */
+    static final class Solution {
+
+        /** A solution with plugboard PLUGBOARD, scoring SCORE. */
+        Solution(Permutation plugboard, double score) {
+            _plugboard = plugboard;
+            _score = score;
+        }
+
+        /** Return my plugboard. */
+        Permutation plugboard() {
+            return _plugboard;
+        }
+
+        /** Return the n-gram score of the decryption with my plugboard. */
+        double score() {
+            return _score;
+        }
+
+        /** My plugboard. */
+        private final Permutation _plugboard;
+        /** My score. */
+        private final double _score;
+    }
+
+    /** Smallest increase in score that counts as an improvement. */
+    private static final double EPSILON = 1e-9;
+
+    /** Scores of n-grams. */
+    private final NgramTable _table;
+    /** Alphabet of the n-grams. */
+    private final Alphabet _alphabet;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Most pairs a plugboard may have. */
+    private final int _maxPairs;
+    /** Number of (n-1)-grams, which keeps a rolling n-gram index in
+     *  range. */
+    private final int _wrap;
+    /** Best solution of the current solve(). */
+    private Solution _best;
+    /** Plugboards scored by the current solve(). */
+    private final LongAdder _evaluations = new LongAdder();
+}
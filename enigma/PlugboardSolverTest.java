@@ -0,0 +1,73 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the PlugboardSolver class.
+ *  @author Katrina Sharonin
+ */
+public class PlugboardSolverTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTS ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    private static final String PLAINTEXT =
+        "BYTHESHORESOFGITCHEGUMEEBYTHESHININGBIGSEAWATERSTOODTHEWIGWAM"
+        + "OFNOKOMISDAUGHTEROFTHEMOONNOKOMISDARKBEHINDITROSETHEFOREST"
+        + "ROSETHEBLACKANDGLOOMYPINETREESROSETHEFIRSWITHCONESUPONTHEM"
+        + "BRIGHTBEFOREITBEATTHEWATERBEATTHECLEARANDSUNNYWATERBEATTHE"
+        + "SHININGBIGSEAWATERTHERETHEWRINKLEDOLDNOKOMISNURSEDTHELITTLE"
+        + "HIAWATHAROCKEDHIMINHISLINDENCRADLEBEDDEDSOFTINMOSSANDRUSHES"
+        + "SAFELYBOUNDWITHREINDEERSINEWSSTILLEDHISFRETFULWAILBYSAYING"
+        + "HUSHTHENAKEDBEARWILLHEARTHEELULLEDHIMINTOSLUMBERSINGINGEWA"
+        + "YEAMYLITTLEOWLETWHOISTHISTHATLIGHTSTHEWIGWAMWITHHISGREAT"
+        + "EYESLIGHTSTHEWIGWAMMANYTHINGSNOKOMISTAUGHTHIMOFTHESTARS";
+
+    /** A machine with the rotors B, Beta, III, IV and I, at AXLE. */
+    private Machine machine() {
+        HashMap<String, String> nav = TestUtils.NAVALA;
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(nav.get("B"), AZ)));
+        rotors.add(new FixedRotor("Beta",
+                new Permutation(nav.get("Beta"), AZ)));
+        rotors.add(new MovingRotor("III",
+                new Permutation(nav.get("III"), AZ), "V"));
+        rotors.add(new MovingRotor("IV",
+                new Permutation(nav.get("IV"), AZ), "J"));
+        rotors.add(new MovingRotor("I",
+                new Permutation(nav.get("I"), AZ), "Q"));
+        Machine mach = new Machine(AZ, 5, 3, rotors);
+        mach.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        mach.setRotors("AXLE");
+        return mach;
+    }
+
+    @Test
+    public void testRecoversPlugboard() {
+        Machine mach = machine();
+        Permutation plugboard =
+            new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ);
+        mach.setPlugboard(plugboard);
+        String ciphertext = mach.convert(PLAINTEXT);
+        mach.setRotors("AXLE");
+
+        NgramTable trigrams = NgramTable.fromText(AZ, 3, PLAINTEXT);
+        PlugboardSolver solver = new PlugboardSolver(trigrams, 10);
+        PlugboardSolver.Solution solution =
+            solver.solve(mach, ciphertext, 16, 61, ForkJoinPool.commonPool());
+        assertTrue(solution.plugboard().sameMapping(plugboard));
+        assertTrue(solver.evaluations() > 16);
+        assertArrayEquals(new int[] { 0, 0, 23, 11, 4 }, mach.settings());
+    }
+
+}
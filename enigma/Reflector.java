@@ -12,12 +12,10 @@ class Reflector extends FixedRotor {
 
     Reflector(String name, Permutation perm) {
         super(name, perm);
-        _setting = 0;
     }
 
-
     @Override
-    boolean atNotch() {
+    boolean atNotch(int posn) {
         return false;
     }
 
@@ -31,19 +29,4 @@ class Reflector extends FixedRotor {
         return true;
     }
 
-    @Override
-    void set(int posn) {
-        if (posn != 0) {
-            throw error("reflector has only one position");
-        }
-    }
-
-    @Override
-    void set(char cposn) {
-        throw error("char ver: reflector has only one position");
-    }
-
-    /** Setting for reflector instance. */
-    private int _setting;
-
 }
@@ -2,16 +2,48 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 
-/** Superclass that represents a rotor in the enigma machine.
+/** Superclass that represents a rotor in the enigma machine.  A Rotor
+ *  is only the rotor's wiring, which never changes, so one Rotor may be
+ *  shared by any number of machines, on any threads.  Each Machine keeps
+ *  the settings of its rotors itself and passes them to the methods
+ *  here.
  *  @author Katrina Sharonin
  */
 class Rotor {
 
-    /** A rotor named NAME whose permutation is given by PERM. */
+    /** A rotor named NAME whose permutation is given by PERM, using
+     *  precomputed tables if its alphabet has at most PRECOMPUTE_LIMIT
+     *  letters. */
     Rotor(String name, Permutation perm) {
+        this(name, perm, perm.size() <= PRECOMPUTE_LIMIT);
+    }
+
+    /** A rotor named NAME whose permutation is given by PERM, using
+     *  precomputed tables iff PRECOMPUTE.  Each table holds size() x
+     *  size() entries, indexed by setting and then by input, with the
+     *  setting offsets already applied, so that each conversion is one
+     *  array load. */
+    Rotor(String name, Permutation perm, boolean precompute) {
         _name = name;
         _permutation = perm;
-        _setting = 0;
+        if (!precompute) {
+            _forwardTable = _backwardTable = null;
+            return;
+        }
+        int size = size();
+        int[] forward = new int[size * size];
+        int[] backward = new int[size * size];
+        for (int posn = 0; posn < size; posn += 1) {
+            for (int p = 0; p < size; p += 1) {
+                int k = posn * size + p;
+                forward[k] = _permutation.wrap(
+                        _permutation.permute(posn + p) - posn);
+                backward[k] = _permutation.wrap(
+                        _permutation.invert(posn + p) - posn);
+            }
+        }
+        _forwardTable = forward;
+        _backwardTable = backward;
     }
 
     /** Return my name. */
@@ -44,42 +76,38 @@ class Rotor {
         return false;
     }
 
-    /** Return my current setting. */
-    int setting() {
-        return _setting;
-    }
-
-    /** Set setting() to POSN.  */
-    void set(int posn) {
-        _setting = posn;
-    }
-
-    /** Set setting() to character CPOSN. */
-    void set(char cposn) {
-        if (!_permutation.alphabet().contains(cposn)) {
-            throw new EnigmaException("char not found");
-        }
-        _setting = _permutation.alphabet().toInt(cposn);
-    }
-
     /** Return the conversion of P (an integer in the range 0..size()-1)
-     *  according to my permutation. */
-    int convertForward(int p) {
-        int preOp = _permutation.wrap(_setting + p);
+     *  according to my permutation when I am at setting POSN (also in
+     *  0..size()-1). */
+    int convertForward(int p, int posn) {
+        if (_forwardTable != null) {
+            return _forwardTable[posn * size() + p];
+        }
+        int preOp = _permutation.wrap(posn + p);
         int resultForward = _permutation.permute(preOp);
-        int operation = resultForward - _setting;
+        int operation = resultForward - posn;
         return _permutation.wrap(operation);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
-     *  according to the inverse of my permutation. */
-    int convertBackward(int e) {
-        int preOpAgain = _permutation.wrap(_setting + e);
+     *  according to the inverse of my permutation when I am at setting
+     *  POSN. */
+    int convertBackward(int e, int posn) {
+        if (_backwardTable != null) {
+            return _backwardTable[posn * size() + e];
+        }
+        int preOpAgain = _permutation.wrap(posn + e);
         int resultBack = _permutation.invert(preOpAgain);
-        int operation = resultBack - _setting;
+        int operation = resultBack - posn;
         return _permutation.wrap(operation);
     }
 
+    /** Return true iff convertForward and convertBackward use precomputed
+     *  per-setting tables. */
+    boolean precomputed() {
+        return _forwardTable != null;
+    }
+
     /** Returns the positions of the notches, as a string giving the letters
      *  on the ring at which they occur. */
     String notches() {
@@ -87,19 +115,12 @@ class Rotor {
 
     }
 
-    /** Returns true iff I am positioned to allow the rotor to my left
-     *  to advance. */
-    boolean atNotch() {
+    /** Returns true iff I would allow the rotor to my left to advance
+     *  were I at setting POSN. */
+    boolean atNotch(int posn) {
         return false;
     }
 
-    /** Advance me one position, if possible. By default, does nothing. */
-    void advance() {
-        if (this.rotates()) {
-            this._setting += 1;
-        }
-    }
-
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -109,9 +130,17 @@ class Rotor {
     private final String _name;
 
     /** The permutation implemented by this rotor in its 0 position. */
-    private Permutation _permutation;
+    private final Permutation _permutation;
+
+    /** Largest alphabet for which the precomputed mode is turned on
+     *  automatically. */
+    static final int PRECOMPUTE_LIMIT = 128;
+
+    /** Precomputed convertForward results, indexed by
+     *  setting * size() + input, or null if not precomputed. */
+    private final int[] _forwardTable;
 
-    /** Setting for the rotor. */
-    private int _setting;
+    /** Precomputed convertBackward results, laid out as _forwardTable. */
+    private final int[] _backwardTable;
 
 }
@@ -0,0 +1,214 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running encryption service.  The configuration is parsed once;
+ *  each connection is then served on its own (virtual, where the JVM has
+ *  them) thread with its own copy of the machine, so connections never
+ *  share rotor settings.
+ *
+ *  Requests and responses are frames: a type byte, a 4-byte big-endian
+ *  length, and that many bytes of UTF-8 text.  A client may send any
+ *  number of frames without waiting; responses come back in order.
+ *  Request types are
+ *      'S'  a settings line, as in the input to Main.  Response: an empty
+ *           'S' frame.
+ *      'M'  a piece of message.  Response: an 'M' frame holding its
+ *           conversion, with whitespace removed and no grouping.  Pieces
+ *           continue one message until the next 'S'.
+ *      'Q'  end of session.  No response; the connection is closed.
+ *  A request that fails gets an 'E' frame holding the error message
+ *  instead, and the session continues.  A rejected settings line leaves
+ *  the session unconfigured: messages get 'E' frames until the next
+ *  settings line is accepted.
+ *
+ *  Sessions are not traced: their records would interleave in one trace
+ *  with nothing to say which session each came from, so Main refuses
+ *  --verbose and --trace with --serve.
+ *  @author Katrina Sharonin
+ */
+final class Server {
+
+    /** Frame types. */
+    static final byte SETTINGS = 'S', MESSAGE = 'M', QUIT = 'Q', ERROR = 'E';
+
+    /** Largest frame payload accepted, in bytes. */
+    static final int MAX_FRAME = 1 << 24;
+
+    /** A server handing out copies of CONFIG (a configured machine with
+     *  no rotors inserted) and listening on ADDRESS, which is either a
+     *  port number on the loopback interface or "unix:" followed by the
+     *  path of a Unix domain socket.  Errors are logged to LOG. */
+    Server(Machine config, String address, PrintStream log) {
+        _config = config;
+        _address = address;
+        _log = log;
+    }
+
+    /** Accept and serve connections until the process is stopped. */
+    void serve() {
+        ExecutorService sessions = newSessionExecutor();
+        try (ServerSocketChannel listener = open()) {
+            while (true) {
+                SocketChannel connection = listener.accept();
+                sessions.execute(() -> session(connection));
+            }
+        } catch (IOException excp) {
+            throw error("server on %s failed: %s", _address,
+                        excp.getMessage());
+        } finally {
+            sessions.shutdownNow();
+        }
+    }
+
+    /** Return a listening channel bound to my address. */
+    private ServerSocketChannel open() throws IOException {
+        if (_address.startsWith(UNIX_PREFIX)) {
+            Path path = Paths.get(_address.substring(UNIX_PREFIX.length()));
+            Files.deleteIfExists(path);
+            path.toFile().deleteOnExit();
+            return ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                .bind(UnixDomainSocketAddress.of(path));
+        }
+        int port;
+        try {
+            port = Integer.parseInt(_address);
+        } catch (NumberFormatException excp) {
+            throw error("bad server address: %s", _address);
+        }
+        return ServerSocketChannel.open()
+            .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                        port));
+    }
+
+    /** Serve the requests on CONNECTION with a private machine. */
+    private void session(SocketChannel connection) {
+        try (SocketChannel channel = connection) {
+            session(Channels.newInputStream(channel),
+                    Channels.newOutputStream(channel));
+        } catch (IOException excp) {
+            _log.printf("Error: connection failed: %s%n", excp.getMessage());
+        }
+    }
+
+    /** Serve the requests read from INPUT with a private machine, writing
+     *  the responses to OUTPUT, until a QUIT request or the end of INPUT.
+     *  Until a settings line has been accepted, and after one has been
+     *  rejected, messages get ERROR responses. */
+    void session(InputStream input, OutputStream output) throws IOException {
+        Machine machine = _config.copy();
+        boolean configured = false;
+        StringBuilder converted = new StringBuilder();
+        Lexer settings = new Lexer();
+        DataInputStream in =
+            new DataInputStream(new BufferedInputStream(input));
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(output));
+        try {
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException excp) {
+                    return;
+                }
+                int length = in.readInt();
+                if (length < 0 || length > MAX_FRAME) {
+                    throw new IOException("bad frame length " + length);
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (type == QUIT) {
+                    return;
+                }
+                String text = new String(payload, StandardCharsets.UTF_8);
+                try {
+                    if (type == SETTINGS) {
+                        configured = false;
+                        Main.setUp(machine, text, 0, settings,
+                                   _settingsCache);
+                        configured = true;
+                        write(out, SETTINGS, "");
+                    } else if (type == MESSAGE) {
+                        if (!configured) {
+                            throw error("no setting line given");
+                        }
+                        converted.setLength(0);
+                        machine.convert(text, converted);
+                        write(out, MESSAGE, converted);
+                    } else {
+                        throw error("unknown request type %c", (char) type);
+                    }
+                } catch (EnigmaException excp) {
+                    write(out, ERROR, excp.getMessage());
+                }
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    /** Write a frame of type TYPE holding TEXT to OUT. */
+    static void write(DataOutputStream out, byte type,
+                      CharSequence text) throws IOException {
+        byte[] payload = text.toString().getBytes(StandardCharsets.UTF_8);
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    /** Return an executor that runs each session on a new virtual thread
+     *  if this JVM supports them, and otherwise on a pooled platform
+     *  thread. */
+    private static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException excp) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /** Prefix of addresses naming Unix domain sockets. */
+    private static final String UNIX_PREFIX = "unix:";
+
+    /** Configured machine copied for each session. */
+    private final Machine _config;
+
+    /** Compiled settings lines, shared by all sessions. */
+    private final SettingsCache _settingsCache = new SettingsCache();
+
+    /** Address to listen on. */
+    private final String _address;
+
+    /** Destination of error reports. */
+    private final PrintStream _log;
+
+}
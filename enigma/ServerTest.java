@@ -0,0 +1,162 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Server class, run on sessions
+ *  read from and written to byte arrays.
+ *  @author Katrina Sharonin
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    private static final String SETTING1 =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    @Test
+    public void testFrames() throws IOException {
+        assertEquals("S: M:QVPQSOKOILP M:UBKJZPISFXDW",
+                     session("S", SETTING1, "M", "FROM HIS SHOU",
+                             "M", "LDER HIAWATHA"));
+        assertEquals("S: M:QVPQSOKOILP S: M:QVPQSOKOILP",
+                     session("S", SETTING1, "M", "FROM HIS SHOU",
+                             "S", SETTING1, "M", "FROMHISSHOU"));
+        assertEquals("S: M:", session("S", SETTING1, "M", "", "Q", "",
+                                      "M", "FROM"));
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        assertEquals("E:no setting line given",
+                     session("M", "FROM"));
+        assertEquals("E:unknown request type X S:",
+                     session("X", "", "S", SETTING1));
+        assertEquals("S: E:character f not in alphabet M:QVPQ",
+                     session("S", SETTING1, "M", "from",
+                             "M", "FROM"));
+    }
+
+    @Test
+    public void testRecovery() throws IOException {
+        String[] bad = {
+            "* B Beta III I I AXLE (HQ)",
+            "* B Beta III IV I AXL (HQ)",
+            "* B Beta III IV I AXLE (HQE)",
+            "* B Beta III IV I AXL",
+        };
+        for (String settings : bad) {
+            String response =
+                session("S", SETTING1, "M", "FROM", "S", settings,
+                        "M", "HIS", "S", SETTING1, "M", "FROM");
+            assertTrue(response, response.startsWith("S: M:QVPQ E:"));
+            assertTrue(response, response.endsWith(
+                           " E:no setting line given S: M:QVPQ"));
+        }
+    }
+
+    @Test
+    public void testRejectedSettingsLeaveMachine() {
+        Machine machine = config();
+        Main.setUp(machine, SETTING1);
+        CompiledSettings before = machine.compile();
+        String[] bad = {
+            "* B Beta III I I AXLE (HQ)",
+            "* B Beta III IV I AXL (HQ)",
+            "* B Beta III IV I AXLE (HQE)",
+            "* Beta B III IV I AXLE (HQ)",
+        };
+        for (String settings : bad) {
+            try {
+                Main.setUp(machine, settings);
+                fail("accepted " + settings);
+            } catch (EnigmaException excp) {
+                CompiledSettings after = machine.compile();
+                for (int i = 0; i < 5; i += 1) {
+                    assertEquals(before.rotor(i), after.rotor(i));
+                }
+                assertArrayEquals(before.settings(), after.settings());
+                assertSame(before.plugboard(), after.plugboard());
+            }
+        }
+        assertEquals("QVPQ", machine.convert("FROM"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testBadLength() throws IOException {
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        DataOutputStream frames = new DataOutputStream(request);
+        frames.writeByte(Server.MESSAGE);
+        frames.writeInt(-1);
+        new Server(config(), "0", System.err)
+            .session(new ByteArrayInputStream(request.toByteArray()),
+                     new ByteArrayOutputStream());
+    }
+
+    /** Return a machine with the rotors of SETTING1 and one more moving
+     *  rotor, II. */
+    private static Machine config() {
+        HashMap<String, String> nav = TestUtils.NAVALA;
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(nav.get("B"), AZ)));
+        rotors.add(new FixedRotor("Beta",
+                new Permutation(nav.get("Beta"), AZ)));
+        rotors.add(new MovingRotor("I",
+                new Permutation(nav.get("I"), AZ), "Q"));
+        rotors.add(new MovingRotor("II",
+                new Permutation(nav.get("II"), AZ), "E"));
+        rotors.add(new MovingRotor("III",
+                new Permutation(nav.get("III"), AZ), "V"));
+        rotors.add(new MovingRotor("IV",
+                new Permutation(nav.get("IV"), AZ), "J"));
+        return new Machine(AZ, 5, 3, rotors);
+    }
+
+    /** Return the responses of a new session to requests REQUESTS, given
+     *  as alternating frame types and payloads, each response shown as
+     *  its type, ':' and its payload, separated by blanks. */
+    private static String session(String... requests) throws IOException {
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        DataOutputStream frames = new DataOutputStream(request);
+        for (int i = 0; i < requests.length; i += 2) {
+            Server.write(frames, (byte) requests[i].charAt(0),
+                         requests[i + 1]);
+        }
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        new Server(config(), "0", System.err)
+            .session(new ByteArrayInputStream(request.toByteArray()),
+                     response);
+
+        DataInputStream in = new DataInputStream(
+            new ByteArrayInputStream(response.toByteArray()));
+        StringBuilder result = new StringBuilder();
+        while (in.available() > 0) {
+            char type = (char) in.readByte();
+            byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(type).append(':')
+                .append(new String(payload, StandardCharsets.UTF_8));
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,96 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded cache of CompiledSettings, keyed by the text of the
+ *  settings lines they came from, for machines built from a single
+ *  configuration.  Plugboards with the same mapping are interned, so that
+ *  settings lines differing only in their rotors share one Permutation.
+ *  When full, the least recently used entries are dropped.  A cache may
+ *  be shared by several threads.
+ *  @author Katrina Sharonin
+ */
+final class SettingsCache {
+
+    /** Default maximum number of settings lines (and of plugboards)
+     *  held. */
+    static final int DEFAULT_CAPACITY = 1 << 10;
+
+    /** An empty cache holding at most CAPACITY settings lines and
+     *  CAPACITY plugboards. */
+    SettingsCache(int capacity) {
+        _capacity = capacity;
+        _settings = new LinkedHashMap<String, CompiledSettings>(16, 0.75f,
+                                                                true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, CompiledSettings> e) {
+                return size() > _capacity;
+            }
+        };
+        _plugboards = new LinkedHashMap<Permutation, Permutation>(16, 0.75f,
+                                                                  true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<Permutation, Permutation> e) {
+                return size() > _capacity;
+            }
+        };
+    }
+
+    /** An empty cache of DEFAULT_CAPACITY. */
+    SettingsCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** Return the settings compiled from the settings line LINE, or null
+     *  if I do not have them. */
+    synchronized CompiledSettings get(String line) {
+        CompiledSettings result = _settings.get(line);
+        if (result == null) {
+            _misses += 1;
+        } else {
+            _hits += 1;
+        }
+        return result;
+    }
+
+    /** Record that the settings line LINE compiles to SETTINGS, and return
+     *  SETTINGS with its plugboard interned. */
+    synchronized CompiledSettings put(String line,
+                                      CompiledSettings settings) {
+        if (_capacity == 0) {
+            return settings;
+        }
+        Permutation plugboard = _plugboards.get(settings.plugboard());
+        if (plugboard == null) {
+            plugboard = settings.plugboard();
+            _plugboards.put(plugboard, plugboard);
+        } else if (plugboard != settings.plugboard()) {
+            settings = settings.withPlugboard(plugboard);
+        }
+        _settings.put(line, settings);
+        return settings;
+    }
+
+    /** Return the number of lookups that found their settings line. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that did not find their settings
+     *  line. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Maximum number of entries in each of my maps. */
+    private final int _capacity;
+    /** Compiled settings by settings line, least recently used first. */
+    private final LinkedHashMap<String, CompiledSettings> _settings;
+    /** Interned plugboards, least recently used first. */
+    private final LinkedHashMap<Permutation, Permutation> _plugboards;
+    /** Lookup counts. */
+    private long _hits, _misses;
+}
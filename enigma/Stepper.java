@@ -0,0 +1,200 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** The stepping rules of one lineup of rotors, precomputed so that
+ *  stepping allocates nothing and asks no Rotor anything.  For each slot
+ *  I keep a bitset of the settings at which the rotor in it carries, that
+ *  is, is at a notch with a rotating rotor to its left, and for the fast
+ *  rotor the distance from each of its settings to its next carry.  From
+ *  these I answer, in time proportional to the number of slots, how many
+ *  letters can be converted before a rotor other than the fast one moves.
+ *
+ *  Rotor settings are passed to me as arrays indexed by slot, as returned
+ *  by Machine.settings(); I keep no settings of my own, so one Stepper
+ *  may be shared by any number of machines and threads.
+ *  @author Katrina Sharonin
+ */
+final class Stepper {
+
+    /** Stepping rules for ROTORS, by slot (the reflector first), all with
+     *  an alphabet of SIZE characters. */
+    Stepper(List<Rotor> rotors, int size) {
+        int n = rotors.size();
+        if (n < 2) {
+            throw EnigmaException.error("no rotors inserted");
+        }
+        _size = size;
+        _fast = n - 1;
+        _rotates = new boolean[n];
+        _carries = new long[n][];
+        for (int i = 0; i < n; i += 1) {
+            Rotor rotor = rotors.get(i);
+            _rotates[i] = rotor.rotates();
+            _carries[i] = new long[(size + Long.SIZE - 1) / Long.SIZE];
+            if (i > 0 && rotors.get(i - 1).rotates()) {
+                for (int p = 0; p < size; p += 1) {
+                    if (rotor.atNotch(p)) {
+                        _carries[i][p >>> LOG_LONG_SIZE] |= 1L << p;
+                    }
+                }
+            }
+        }
+        _fastRun = new long[size];
+        Arrays.fill(_fastRun, Long.MAX_VALUE);
+        for (int p = 2 * size - 1; p >= 0; p -= 1) {
+            int q = p % size;
+            if (carries(_fast, q)) {
+                _fastRun[q] = 0;
+            } else if (_fastRun[(q + 1) % size] != Long.MAX_VALUE) {
+                _fastRun[q] = _fastRun[(q + 1) % size] + 1;
+            }
+        }
+    }
+
+    /** Return true iff the rotor in SLOT, at setting POSN, moves the rotor
+     *  to its left (and itself) on the next step. */
+    boolean carries(int slot, int posn) {
+        return (_carries[slot][posn >>> LOG_LONG_SIZE] & (1L << posn)) != 0;
+    }
+
+    /** Return the number of letters that can be converted from settings
+     *  POSNS before one moves a rotor other than the fast one, or
+     *  Long.MAX_VALUE if none ever will. */
+    long runLength(int[] posns) {
+        if (!_rotates[_fast]) {
+            return 0;
+        }
+        for (int i = 1; i < _fast; i += 1) {
+            if (carries(i, posns[i])) {
+                return 0;
+            }
+        }
+        return _fastRun[posns[_fast]];
+    }
+
+    /** Advance only the fast rotor of POSNS by N letters, where N is at
+     *  most runLength(POSNS). */
+    void advanceFast(int[] posns, long n) {
+        posns[_fast] = (int) ((posns[_fast] + n) % _size);
+    }
+
+    /** Advance the settings POSNS by one letter, and return the number of
+     *  rotors that took part in the step (a rotor that cannot rotate
+     *  still counts, as in the original stepping code). */
+    int step(int[] posns) {
+        int moved = 0;
+        boolean carryHere = carries(1, posns[1]);
+        for (int i = 1; i <= _fast; i += 1) {
+            boolean carryRight = i < _fast && carries(i + 1, posns[i + 1]);
+            if (i == _fast || carryHere || carryRight) {
+                if (_rotates[i]) {
+                    posns[i] = posns[i] + 1 == _size ? 0 : posns[i] + 1;
+                }
+                moved += 1;
+            }
+            carryHere = carryRight;
+        }
+        return moved;
+    }
+
+    /** Return the number of rotors other than the fast one that will
+     *  carry on the next step from POSNS: the double steps. */
+    int doubleSteps(int[] posns) {
+        int count = 0;
+        for (int i = 1; i < _fast; i += 1) {
+            if (carries(i, posns[i])) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Advance the settings POSNS by N letters.  Takes time proportional
+     *  to the number of letters that move more than the fast rotor. */
+    void jump(int[] posns, long n) {
+        while (n > 0) {
+            long run = runLength(posns);
+            if (run >= n) {
+                advanceFast(posns, n);
+                return;
+            }
+            advanceFast(posns, run);
+            step(posns);
+            n -= run + 1;
+        }
+    }
+
+    /** Return the period of the settings that stepping from POSNS leads
+     *  to: the number of letters after which they repeat.  (Because of
+     *  double stepping, POSNS itself need not recur.)  POSNS is not
+     *  changed.  Uses Brent's cycle detection on the settings at which
+     *  something other than the fast rotor moves, so that it takes time
+     *  proportional to the number of such letters in a period, and no
+     *  space beyond a few copies of POSNS. */
+    long period(int[] posns) {
+        int[] tortoise = posns.clone();
+        long run = runLength(tortoise);
+        if (run == Long.MAX_VALUE) {
+            return fastPeriod();
+        }
+        advanceFast(tortoise, run);
+        int[] hare = tortoise.clone();
+        if (nextCarry(hare) < 0) {
+            return fastPeriod();
+        }
+        long power = 1, carries = 1;
+        while (!Arrays.equals(tortoise, hare)) {
+            if (power == carries) {
+                System.arraycopy(hare, 0, tortoise, 0, hare.length);
+                power *= 2;
+                carries = 0;
+            }
+            if (nextCarry(hare) < 0) {
+                return fastPeriod();
+            }
+            carries += 1;
+        }
+        long letters = 0;
+        for (long k = 0; k < carries; k += 1) {
+            letters += nextCarry(hare);
+        }
+        return letters;
+    }
+
+    /** Step POSNS, which must be about to move more than the fast rotor,
+     *  and then advance it to the next such setting.  Return the number
+     *  of letters that takes, or -1 if there is no such setting, in which
+     *  case POSNS is left just after the step. */
+    private long nextCarry(int[] posns) {
+        step(posns);
+        long run = runLength(posns);
+        if (run == Long.MAX_VALUE) {
+            return -1;
+        }
+        advanceFast(posns, run);
+        return run + 1;
+    }
+
+    /** Return the period of settings in which only the fast rotor ever
+     *  moves. */
+    private long fastPeriod() {
+        return _rotates[_fast] ? _size : 1;
+    }
+
+    /** log2 of Long.SIZE. */
+    private static final int LOG_LONG_SIZE = 6;
+
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Slot of the fast rotor. */
+    private final int _fast;
+    /** Whether the rotor in each slot rotates. */
+    private final boolean[] _rotates;
+    /** Bitsets, by slot, of the settings at which each rotor carries. */
+    private final long[][] _carries;
+    /** For each setting of the fast rotor, the number of letters before
+     *  it carries, or Long.MAX_VALUE if it never does. */
+    private final long[] _fastRun;
+}
@@ -0,0 +1,55 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/** A Tracer that keeps its records in memory, packed as by TraceWriter,
+ *  until writeTo passes them on to a TraceWriter.  Machines converting
+ *  concurrently may each trace to a TraceBuffer of their own, so that
+ *  their records can be written out one machine after another rather
+ *  than interleaved.
+ *  @author Katrina Sharonin
+ */
+final class TraceBuffer implements Tracer {
+
+    @Override
+    public void trace(Machine machine, int input, int plugged, int output) {
+        int size = TraceDecoder.recordSize(machine.numRotors() - 1);
+        if (_block == null || _block.remaining() < size) {
+            int capacity = FIRST_BLOCK;
+            if (_block != null) {
+                _blocks.add(_block);
+                capacity = TraceWriter.BLOCK;
+            }
+            _block = ByteBuffer.allocate(Math.max(capacity, size));
+        }
+        TraceWriter.record(_block, machine, input, plugged, output);
+    }
+
+    /** Does nothing: my records are kept until writeTo. */
+    @Override
+    public void close() {
+    }
+
+    /** Write all my records to OUT, in the order traced, and forget
+     *  them. */
+    void writeTo(TraceWriter out) {
+        if (_block != null) {
+            _blocks.add(_block);
+            _block = null;
+        }
+        for (ByteBuffer block : _blocks) {
+            out.write(block);
+        }
+        _blocks.clear();
+    }
+
+    /** Size of my first block, in bytes; later ones are
+     *  TraceWriter.BLOCK bytes. */
+    private static final int FIRST_BLOCK = 1 << 10;
+
+    /** The block being filled, or null if none. */
+    private ByteBuffer _block;
+    /** Full blocks, in the order filled. */
+    private final ArrayList<ByteBuffer> _blocks = new ArrayList<>();
+}
@@ -0,0 +1,83 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.nio.charset.Charset;
+
+import static enigma.EnigmaException.*;
+
+/** Renders a binary trace written by TraceWriter as text, one line of
+ *  the form "[AAAA] X -> Y -> Z" per letter: the settings of the
+ *  non-reflector rotors, the input letter, the letter after the
+ *  plugboard, and the output letter.
+ *
+ *  Each record is a 2-byte big-endian count N of rotor settings, then
+ *  N settings, the input, the plugged and the output letters, each as a
+ *  2-byte big-endian char.
+ *  @author Katrina Sharonin
+ */
+public final class TraceDecoder {
+
+    /** Not instantiable. */
+    private TraceDecoder() {
+    }
+
+    /** Print the trace in the file named ARGS[0] on the standard output.
+     *  Exits with code 1 if it cannot be read or is malformed. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 1) {
+                throw error("Usage: java enigma.TraceDecoder TRACE");
+            }
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(args[0])))) {
+                Writer out = new BufferedWriter(
+                    new OutputStreamWriter(System.out,
+                                           Charset.defaultCharset()));
+                decode(in, out);
+                out.flush();
+            } catch (IOException excp) {
+                throw error("could not read %s: %s", args[0],
+                            excp.getMessage());
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Append the text of each record in IN, up to its end, to OUT. */
+    static void decode(DataInputStream in, Appendable out)
+        throws IOException {
+        for (int hi = in.read(); hi >= 0; hi = in.read()) {
+            try {
+                int shown = (hi << Byte.SIZE) | in.readUnsignedByte();
+                out.append('[');
+                for (int r = 0; r < shown; r += 1) {
+                    out.append(in.readChar());
+                }
+                out.append("] ").append(in.readChar())
+                    .append(" -> ").append(in.readChar())
+                    .append(" -> ").append(in.readChar())
+                    .append(System.lineSeparator());
+            } catch (EOFException excp) {
+                throw error("truncated trace record");
+            }
+        }
+    }
+
+    /** Return the size in bytes of a record showing SHOWN rotor
+     *  settings. */
+    static int recordSize(int shown) {
+        return Short.BYTES + Character.BYTES * (shown + 3);
+    }
+
+}
@@ -0,0 +1,171 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static enigma.EnigmaException.*;
+
+/** A Tracer that packs each record into a compact binary block and
+ *  leaves the writing to a background thread, so that a traced machine
+ *  only ever copies a few chars per letter.  The thread either copies the
+ *  blocks as they are (see TraceDecoder for the format) or renders them
+ *  as text lines of the form "[AAAA] X -> Y -> Z".
+ *  @author Katrina Sharonin
+ */
+final class TraceWriter implements Tracer {
+
+    /** Usual size of a block of records, in bytes. */
+    static final int BLOCK = 1 << 16;
+
+    /** A TraceWriter sending its records to OUT, as text lines in the
+     *  default charset if TEXT, and otherwise in binary. */
+    TraceWriter(OutputStream out, boolean text) {
+        _out = out;
+        _text = text;
+        _block = ByteBuffer.allocate(BLOCK);
+        _writer = new Thread(this::drain, "enigma-trace");
+        _writer.setDaemon(true);
+        _writer.start();
+    }
+
+    @Override
+    public synchronized void trace(Machine machine, int input, int plugged,
+                                   int output) {
+        int size = TraceDecoder.recordSize(machine.numRotors() - 1);
+        if (_block.remaining() < size) {
+            handOff(Math.max(BLOCK, size));
+        }
+        record(_block, machine, input, plugged, output);
+    }
+
+    /** Write the records in RECORDS, up to its position, after all those
+     *  traced so far.  RECORDS is handed to the background thread, and
+     *  must not be used afterwards. */
+    synchronized void write(ByteBuffer records) {
+        if (records.position() > 0) {
+            handOff(BLOCK);
+            records.flip();
+            put(records);
+        }
+    }
+
+    /** Pack the record of MACHINE's conversion of INPUT to PLUGGED and
+     *  OUTPUT, as passed to trace(), into BLOCK, which must have room for
+     *  it. */
+    static void record(ByteBuffer block, Machine machine, int input,
+                       int plugged, int output) {
+        Alphabet alpha = machine.alphabet();
+        int shown = machine.numRotors() - 1;
+        block.putShort((short) shown);
+        for (int r = 1; r <= shown; r += 1) {
+            block.putChar(alpha.toChar(machine.setting(r)));
+        }
+        block.putChar(alpha.toChar(input));
+        block.putChar(alpha.toChar(plugged));
+        block.putChar(alpha.toChar(output));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (_block == null) {
+            return;
+        }
+        handOff(0);
+        _block = null;
+        put(END);
+        try {
+            _writer.join();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        if (_failure != null) {
+            throw error("could not write trace: %s", _failure.getMessage());
+        }
+    }
+
+    /** Queue my current block, if it holds any records, for writing, and
+     *  start a new one of CAPACITY bytes. */
+    private void handOff(int capacity) {
+        if (_block.position() > 0) {
+            _block.flip();
+            put(_block);
+            _block = ByteBuffer.allocate(capacity);
+        }
+    }
+
+    /** Queue BLOCK for the background thread, waiting while too many
+     *  blocks are already queued. */
+    private void put(ByteBuffer block) {
+        try {
+            _pending.put(block);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted while tracing");
+        }
+    }
+
+    /** Body of the background thread: write each queued block to _out
+     *  until END arrives. */
+    private void drain() {
+        Writer text = null;
+        if (_text) {
+            text = new BufferedWriter(
+                new OutputStreamWriter(_out, Charset.defaultCharset()));
+        }
+        try {
+            for (ByteBuffer block = _pending.take(); block != END;
+                 block = _pending.take()) {
+                if (_failure != null) {
+                    continue;
+                }
+                try {
+                    if (text != null) {
+                        TraceDecoder.decode(new DataInputStream(
+                            new ByteArrayInputStream(block.array(), 0,
+                                                     block.limit())), text);
+                        text.flush();
+                    } else {
+                        _out.write(block.array(), 0, block.limit());
+                    }
+                } catch (IOException excp) {
+                    _failure = excp;
+                }
+            }
+            _out.flush();
+        } catch (IOException excp) {
+            _failure = excp;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Marks the end of the queued blocks. */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /** Most full blocks waiting to be written before trace() blocks. */
+    private static final int MAX_PENDING = 4;
+
+    /** Where my records go. */
+    private final OutputStream _out;
+    /** True iff my records are written as text. */
+    private final boolean _text;
+    /** The block currently being filled, or null once closed. */
+    private ByteBuffer _block;
+    /** Full blocks waiting for the background thread. */
+    private final BlockingQueue<ByteBuffer> _pending =
+        new ArrayBlockingQueue<>(MAX_PENDING);
+    /** The background thread. */
+    private final Thread _writer;
+    /** The first error the background thread hit, if any. */
+    private volatile IOException _failure;
+}
@@ -0,0 +1,18 @@
+package enigma;
+
+/** A sink for per-letter traces of a Machine's conversions.  A Machine
+ *  with no Tracer installed never consults one, so tracing costs nothing
+ *  when it is off.
+ *  @author Katrina Sharonin
+ */
+interface Tracer {
+
+    /** Record that MACHINE, with its rotors at their current settings,
+     *  converted INPUT to PLUGGED at the plugboard and finally to OUTPUT
+     *  (all indices in MACHINE's alphabet). */
+    void trace(Machine machine, int input, int plugged, int output);
+
+    /** Write out every record traced so far and release my resources. */
+    void close();
+
+}
@@ -16,7 +16,17 @@ public class UnitTest {
         }
         System.exit(textui.runClasses(PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                MachineTest.class,
+                ConfigImageTest.class,
+                LexerTest.class,
+                BatchMachineTest.class,
+                KeySearchTest.class,
+                NgramTableTest.class,
+                PlugboardSolverTest.class,
+                BombeTest.class,
+                GroupedWriterTest.class,
+                MainTest.class,
+                ServerTest.class));
     }
 
 }